@@ -0,0 +1,283 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This class represents an AVL tree: a binary search tree in which the heights of the two subtrees
+ * of every node differ by at most one. That keeps the tree at most about 1.44 log n tall, against
+ * 2 log n for a red-black tree, so lookups and range scans visit fewer nodes, at the price of
+ * more rotations on insert. It suits workloads that are dominated by reads.
+ *
+ * Like in BinarySearchTree, duplicate values are allowed.
+ */
+public class AVLTree<T extends Comparable<T>> extends BSTRotation<T>
+    implements IterableSortedCollection<T> {
+
+  private Comparable<T> maximum = null;
+  private Comparable<T> minimum = null;
+
+  /**
+   * This class represents a node in an AVLTree, which also stores the height of its subtree.
+   */
+  protected static class AVLNode<T> extends BinaryTreeNode<T> {
+
+    // height of the subtree rooted at this node, counting a leaf as 1; an AVL tree of 2^31 values
+    // is less than 46 levels tall, so a byte is enough
+    protected byte height = 1;
+
+    /**
+     * Creates a new leaf node with the value data.
+     *
+     * @param data the value the new node stores
+     */
+    public AVLNode(T data) {
+      super(data);
+    }
+
+    /**
+     * Recomputes the height stored in this node from the heights stored in its children.
+     */
+    public void updateHeight() {
+      this.height = (byte) (1 + Math.max(heightOf(this.left), heightOf(this.right)));
+    }
+
+    /**
+     * Returns the height of the subtree rooted at node, or 0 when node is null.
+     */
+    public static int heightOf(BinaryTreeNode<?> node) {
+      return (node == null) ? 0 : ((AVLNode<?>) node).height;
+    }
+
+    /**
+     * Returns a string representation for this node.
+     *
+     * @return a string representation of the node's value and height
+     */
+    @Override
+    public String toString() {
+      return this.data.toString() + "(" + this.height + ")";
+    }
+
+  }
+
+  /**
+   * Creates an empty AVL tree.
+   */
+  public AVLTree() {
+  }
+
+  /**
+   * Inserts a new data value into the tree, and then restores the AVL property on the path from
+   * the new node to the root.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+
+    AVLNode<T> node = new AVLNode<>(data);
+    if (root == null) {
+      root = node;
+    } else {
+      insertHelper(node, root);
+      ensureBalanced((AVLNode<T>) node.parent());
+    }
+  }
+
+  /**
+   * Walks up from node, the parent of a newly inserted leaf, updating the stored heights. The
+   * first ancestor whose subtrees now differ in height by two is fixed with a single or double
+   * rotation, which brings its subtree back to the height it had before the insert, so nothing
+   * above it changes. The walk also stops early at the first ancestor whose height is unchanged.
+   */
+  private void ensureBalanced(AVLNode<T> node) {
+    while (node != null) {
+      int oldHeight = node.height;
+      node.updateHeight();
+      int balance = AVLNode.heightOf(node.childLeft()) - AVLNode.heightOf(node.childRight());
+      if (balance > 1) {
+        rebalance(node, (AVLNode<T>) node.childLeft(), false);
+        return;
+      } else if (balance < -1) {
+        rebalance(node, (AVLNode<T>) node.childRight(), true);
+        return;
+      } else if (node.height == oldHeight) {
+        return;
+      }
+      node = (AVLNode<T>) node.parent();
+    }
+  }
+
+  /**
+   * Rotates child, the taller child of node, above node. When child's taller subtree is its inner
+   * one (on the side facing toward node), that grandchild is first rotated above child, which
+   * turns the double rotation into two single ones. Heights are updated bottom up; rotate keeps
+   * the subtree sizes correct.
+   *
+   * @param node      the unbalanced node
+   * @param child     the taller child of node
+   * @param isRight   true when child is the right child of node
+   */
+  private void rebalance(AVLNode<T> node, AVLNode<T> child, boolean isRight) {
+    BinaryTreeNode<T> inner = isRight ? child.childLeft() : child.childRight();
+    BinaryTreeNode<T> outer = isRight ? child.childRight() : child.childLeft();
+    if (AVLNode.heightOf(inner) > AVLNode.heightOf(outer)) {
+      AVLNode<T> grandchild = (AVLNode<T>) inner;
+      rotate(grandchild, child);
+      child.updateHeight();
+      grandchild.updateHeight();
+      child = grandchild;
+    }
+    rotate(child, node);
+    node.updateHeight();
+    child.updateHeight();
+  }
+
+  /**
+   * Allows setting the start (minimum) value of the iterator. When this method is called, every
+   * iterator created after it will use the minimum set by this method until this method is called
+   * again to set a new minimum value.
+   *
+   * @param min the minimum for iterators created for this tree, or null for no minimum
+   */
+  @Override
+  public void setIteratorMin(Comparable<T> min) {
+    this.minimum = min;
+  }
+
+  /**
+   * Allows setting the stop (maximum) value of the iterator. When this method is called, every
+   * iterator created after it will use the maximum set by this method until this method is called
+   * again to set a new maximum value.
+   *
+   * @param max the maximum for iterators created for this tree, or null for no maximum
+   */
+  @Override
+  public void setIteratorMax(Comparable<T> max) {
+    this.maximum = max;
+  }
+
+  /**
+   * Returns an iterator over the values stored in this tree, between the minimum and maximum set
+   * by setIteratorMin and setIteratorMax.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(this.minimum, this.maximum);
+  }
+
+  /**
+   * Returns an iterator over the values between min and max (inclusive) stored in this tree. A
+   * null min or max leaves that end of the range unbounded.
+   *
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return an iterator over the values in that range
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    return new IterableRedBlackTree.RBTIterator<>(this.root, min, max);
+  }
+
+  /**
+   * Returns the height of the subtree rooted at node, or -1 if a node in it holds a value outside
+   * of [low, high] (a null bound is unbounded), stores the wrong height or subtree size, is not
+   * linked back to its parent, or has subtrees whose heights differ by more than one.
+   */
+  private int checkSubtree(BinaryTreeNode<T> node, T low, T high) {
+    if (node == null) {
+      return 0;
+    }
+    if (low != null && node.getData().compareTo(low) < 0
+        || high != null && node.getData().compareTo(high) > 0
+        || node.childLeft() != null && node.childLeft().parent() != node
+        || node.childRight() != null && node.childRight().parent() != node
+        || node.subtreeSize() != 1 + BinaryTreeNode.sizeOf(node.childLeft())
+            + BinaryTreeNode.sizeOf(node.childRight())) {
+      return -1;
+    }
+    int leftHeight = checkSubtree(node.childLeft(), low, node.getData());
+    int rightHeight = checkSubtree(node.childRight(), node.getData(), high);
+    if (leftHeight < 0 || rightHeight < 0 || Math.abs(leftHeight - rightHeight) > 1
+        || AVLNode.heightOf(node) != 1 + Math.max(leftHeight, rightHeight)) {
+      return -1;
+    }
+    return AVLNode.heightOf(node);
+  }
+
+  /**
+   * Tests each of the four rotation cases, duplicates, range iteration and clear.
+   */
+  @Test
+  public void Test1() {
+    AVLTree<Integer> tree = new AVLTree<>();
+    assertThrows(NullPointerException.class, () -> tree.insert(null));
+    assertTrue(tree.isEmpty() && !tree.contains(3) && !tree.iterator().hasNext());
+
+    // left-left, right-right, left-right and right-left, each ending with 20 at the root
+    for (int[] order : new int[][] {{30, 20, 10}, {10, 20, 30}, {30, 10, 20}, {10, 30, 20}}) {
+      tree.clear();
+      for (int value : order) {
+        tree.insert(value);
+      }
+      assertTrue(tree.root.getData() == 20 && AVLNode.heightOf(tree.root) == 2);
+      assertEquals(2, tree.checkSubtree(tree.root, null, null));
+    }
+
+    for (int value : new int[] {5, 15, 25, 35, 20, 20, 12}) {
+      tree.insert(value);
+    }
+    assertEquals(10, tree.size());
+    assertTrue(tree.checkSubtree(tree.root, null, null) > 0);
+    assertTrue(tree.contains(12) && tree.contains(35) && !tree.contains(11));
+
+    assertEquals(List.of(5, 10, 12, 15, 20, 20, 20, 25, 30, 35),
+        IterableRedBlackTree.drain(tree.iterator()));
+    assertEquals(List.of(20, 20, 20, 25), IterableRedBlackTree.drain(tree.iterator(16, 25)));
+    tree.setIteratorMax(12);
+    assertEquals(List.of(5, 10, 12), IterableRedBlackTree.drain(tree.iterator()));
+    assertThrows(NoSuchElementException.class, () -> tree.iterator(40, null).next());
+
+    tree.clear();
+    assertTrue(tree.isEmpty() && tree.size() == 0 && !tree.contains(20));
+  }
+
+  /**
+   * Tests that an insert performs at most one single or double rotation, since the rotation brings
+   * the subtree back to its old height, and that a long sorted run stays within the AVL height
+   * bound of about 1.44 log n.
+   */
+  @Test
+  public void Test2() {
+    int[] rotations = new int[1];
+    AVLTree<Integer> tree = new AVLTree<>() {
+      @Override
+      protected void rotate(BinaryTreeNode<Integer> child, BinaryTreeNode<Integer> parent) {
+        rotations[0]++;
+        super.rotate(child, parent);
+      }
+    };
+    int total = 0;
+    for (int i = 0; i < 5000; i++) {
+      rotations[0] = 0;
+      tree.insert((int) ((i * 7919L) % 2000));
+      assertTrue(rotations[0] <= 2);
+      total += rotations[0];
+    }
+    assertTrue(total > 0 && total < 5000 && tree.checkSubtree(tree.root, null, null) > 0);
+
+    AVLTree<Integer> sorted = new AVLTree<>();
+    for (int i = 0; i < 100000; i++) {
+      sorted.insert(i);
+    }
+    int height = sorted.checkSubtree(sorted.root, null, null);
+    assertTrue(height > 0 && height <= 1.44 * Math.log(100002) / Math.log(2));
+    assertTrue(sorted.size() == 100000 && sorted.contains(0) && sorted.contains(99999));
+  }
+}
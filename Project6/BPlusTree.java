@@ -0,0 +1,491 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This class represents a B+ tree. Every value is stored in a leaf, and each node keeps its
+ * values or separators packed in an array, so a lookup touches O(log n / log fanOut) nodes and a
+ * range scan walks leaf arrays from left to right, following the link from each leaf to the next.
+ * Compared to a red-black tree this means far fewer objects and pointer dereferences per value.
+ *
+ * Duplicate values are allowed. Like in BinarySearchTree, a new value is placed in front of the
+ * values that are equal to it.
+ */
+public class BPlusTree<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+  // fan-out used by trees created with the no-argument constructor
+  private static final int DEFAULT_FAN_OUT = 64;
+
+  /**
+   * A node of the tree, holding count values (in a leaf) or separators (in an inner node) in the
+   * first slots of keys. Each array has one spare slot, so a node can take one value more than
+   * it is allowed to keep before it is split.
+   */
+  private abstract static class Node {
+    protected final Object[] keys;
+    protected int count = 0;
+
+    protected Node(int capacity) {
+      this.keys = new Object[capacity];
+    }
+  }
+
+  /**
+   * A leaf node, storing up to fanOut values in sorted order and a link to the next leaf.
+   */
+  private static final class Leaf extends Node {
+    private Leaf next = null;
+
+    private Leaf(int fanOut) {
+      super(fanOut + 1);
+    }
+  }
+
+  /**
+   * An inner node with up to fanOut children. Every value below children[i] is at most keys[i],
+   * and every value below children[i + 1] is at least keys[i].
+   */
+  private static final class Inner extends Node {
+    private final Node[] children;
+
+    private Inner(int fanOut) {
+      super(fanOut);
+      this.children = new Node[fanOut + 1];
+    }
+  }
+
+  // maximum number of values in a leaf and of children of an inner node
+  private int fanOut = DEFAULT_FAN_OUT;
+  private Node root = new Leaf(DEFAULT_FAN_OUT);
+  private int size = 0;
+  // separator between the two halves of the node most recently split by insertHelper
+  private Object separator;
+
+  private Comparable<T> maximum = null;
+  private Comparable<T> minimum = null;
+
+  /**
+   * Creates an empty tree with a default fan-out of 64.
+   */
+  public BPlusTree() {
+  }
+
+  /**
+   * Creates an empty tree whose leaves hold up to fanOut values and whose inner nodes have up to
+   * fanOut children.
+   *
+   * @param fanOut the maximum number of values or children per node
+   * @return the new, empty tree
+   * @throws IllegalArgumentException if fanOut is less than 3
+   */
+  public static <T extends Comparable<T>> BPlusTree<T> withFanOut(int fanOut)
+      throws IllegalArgumentException {
+    if (fanOut < 3) {
+      throw new IllegalArgumentException("Fan-out must be at least 3.");
+    }
+    BPlusTree<T> tree = new BPlusTree<>();
+    tree.fanOut = fanOut;
+    tree.root = new Leaf(fanOut);
+    return tree;
+  }
+
+  /**
+   * Returns the number of keys among the first count entries of keys that are smaller than key,
+   * which is also the position of the first entry that is greater than or equal to key.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> int lowerBound(Object[] keys, int count, Comparable<T> key) {
+    int low = 0;
+    int high = count;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (key.compareTo((T) keys[middle]) > 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Inserts a new data value into the tree. The value goes into the leaf where the first value
+   * greater than or equal to it is found, and any node that overflows is split in half on the way
+   * back up. When the root splits, the tree grows by one level.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException if data argument is null, we do not allow null values to be stored
+   *                              within a SortedCollection
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+    Node right = insertHelper(root, data);
+    if (right != null) {
+      Inner newRoot = new Inner(fanOut);
+      newRoot.keys[0] = separator;
+      newRoot.children[0] = root;
+      newRoot.children[1] = right;
+      newRoot.count = 1;
+      root = newRoot;
+    }
+    size++;
+  }
+
+  /**
+   * Inserts data into the subtree rooted at node. If node has to be split, it keeps the lower half
+   * of its entries, the new node holding the upper half is returned, and the value separating the
+   * two halves is stored in separator. Returns null when node did not have to be split.
+   */
+  private Node insertHelper(Node node, T data) {
+    int index = lowerBound(node.keys, node.count, data);
+    if (node instanceof Leaf) {
+      Leaf leaf = (Leaf) node;
+      System.arraycopy(leaf.keys, index, leaf.keys, index + 1, leaf.count - index);
+      leaf.keys[index] = data;
+      leaf.count++;
+      return (leaf.count > fanOut) ? splitLeaf(leaf) : null;
+    }
+
+    Inner inner = (Inner) node;
+    Node right = insertHelper(inner.children[index], data);
+    if (right == null) {
+      return null;
+    }
+    System.arraycopy(inner.keys, index, inner.keys, index + 1, inner.count - index);
+    System.arraycopy(inner.children, index + 1, inner.children, index + 2, inner.count - index);
+    inner.keys[index] = separator;
+    inner.children[index + 1] = right;
+    inner.count++;
+    return (inner.count == fanOut) ? splitInner(inner) : null;
+  }
+
+  /**
+   * Moves the upper half of the values in leaf to a new leaf that is linked in after it.
+   */
+  private Leaf splitLeaf(Leaf leaf) {
+    Leaf right = new Leaf(fanOut);
+    int keep = leaf.count / 2;
+    right.count = leaf.count - keep;
+    System.arraycopy(leaf.keys, keep, right.keys, 0, right.count);
+    Arrays.fill(leaf.keys, keep, leaf.count, null);
+    leaf.count = keep;
+    right.next = leaf.next;
+    leaf.next = right;
+    separator = right.keys[0];
+    return right;
+  }
+
+  /**
+   * Moves the upper half of the children of inner to a new inner node. The separator between the
+   * two halves is moved up to the parent instead of staying in either node.
+   */
+  private Inner splitInner(Inner inner) {
+    Inner right = new Inner(fanOut);
+    int middle = inner.count / 2;
+    right.count = inner.count - middle - 1;
+    System.arraycopy(inner.keys, middle + 1, right.keys, 0, right.count);
+    System.arraycopy(inner.children, middle + 1, right.children, 0, right.count + 1);
+    separator = inner.keys[middle];
+    Arrays.fill(inner.keys, middle, inner.count, null);
+    Arrays.fill(inner.children, middle + 1, inner.count + 1, null);
+    inner.count = middle;
+    return right;
+  }
+
+  /**
+   * Returns the leaf holding the first value that is greater than or equal to key, along with
+   * that value's position in its keys array. When key is null the position of the smallest value
+   * is returned instead. The leaf is null when every value is smaller than key.
+   */
+  private Position<T> lowerBoundPosition(Comparable<T> key) {
+    Node node = root;
+    while (node instanceof Inner) {
+      int index = (key == null) ? 0 : lowerBound(node.keys, node.count, key);
+      node = ((Inner) node).children[index];
+    }
+    Leaf leaf = (Leaf) node;
+    int index = (key == null) ? 0 : lowerBound(leaf.keys, leaf.count, key);
+    if (index == leaf.count) {
+      // every value in this leaf is smaller than key, so the next leaf starts with the answer
+      leaf = leaf.next;
+      index = 0;
+    }
+    return new Position<>(leaf, index);
+  }
+
+  /**
+   * A leaf and an index into its values.
+   */
+  private static final class Position<T> {
+    private final Leaf leaf;
+    private final int index;
+
+    private Position(Leaf leaf, int index) {
+      this.leaf = leaf;
+      this.index = index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T data() {
+      return (T) leaf.keys[index];
+    }
+  }
+
+  /**
+   * Check whether data is stored in the tree.
+   *
+   * @param data the value to check for in the collection
+   * @return true if the collection contains data one or more times, and false otherwise
+   */
+  @Override
+  public boolean contains(Comparable<T> data) {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+    Position<T> position = lowerBoundPosition(data);
+    return position.leaf != null && data.compareTo(position.data()) == 0;
+  }
+
+  /**
+   * Counts the number of values in the tree, with each duplicate value being counted separately
+   * within the value returned.
+   *
+   * @return the number of values in the collection, including duplicates
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Checks if the collection is empty.
+   *
+   * @return true if the collection contains 0 values, false otherwise
+   */
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes all values and duplicates from the collection.
+   */
+  @Override
+  public void clear() {
+    root = new Leaf(fanOut);
+    size = 0;
+  }
+
+  /**
+   * Allows setting the start (minimum) value of the iterator. When this method is called, every
+   * iterator created after it will use the minimum set by this method until this method is called
+   * again to set a new minimum value.
+   *
+   * @param min the minimum for iterators created for this tree, or null for no minimum
+   */
+  @Override
+  public void setIteratorMin(Comparable<T> min) {
+    this.minimum = min;
+  }
+
+  /**
+   * Allows setting the stop (maximum) value of the iterator. When this method is called, every
+   * iterator created after it will use the maximum set by this method until this method is called
+   * again to set a new maximum value.
+   *
+   * @param max the maximum for iterators created for this tree, or null for no maximum
+   */
+  @Override
+  public void setIteratorMax(Comparable<T> max) {
+    this.maximum = max;
+  }
+
+  /**
+   * Returns an iterator over the values in the tree, using the minimum and maximum set by
+   * setIteratorMin and setIteratorMax.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(this.minimum, this.maximum);
+  }
+
+  /**
+   * Returns an iterator over the values between min and max (inclusive). A null min or max leaves
+   * that end of the range unbounded. Finding the first value takes one descent from the root;
+   * after that the iterator walks the leaves' arrays in order.
+   *
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return an iterator over the values in that range
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    Position<T> start = lowerBoundPosition(min);
+    return new LeafIterator<>(start.leaf, start.index, max);
+  }
+
+  /**
+   * Nested class for the iterators of a BPlusTree, which walk the chain of leaves.
+   */
+  private static class LeafIterator<R> implements Iterator<R> {
+
+    // stores the stop point (maximum) for the iterator
+    private final Comparable<R> max;
+    // the leaf and the position in it of the value next() returns
+    private Leaf leaf;
+    private int index;
+
+    private LeafIterator(Leaf leaf, int index, Comparable<R> max) {
+      this.leaf = leaf;
+      this.index = index;
+      this.max = max;
+    }
+
+    /**
+     * Returns true if the iterator has another value to return, and false otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean hasNext() {
+      return leaf != null && index < leaf.count
+          && (max == null || max.compareTo((R) leaf.keys[index]) >= 0);
+    }
+
+    /**
+     * Returns the next value of the iterator.
+     *
+     * @throws NoSuchElementException if the iterator has no more values to return
+     */
+    @SuppressWarnings("unchecked")
+    public R next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more values in range.");
+      }
+      R data = (R) leaf.keys[index++];
+      if (index == leaf.count) {
+        leaf = leaf.next;
+        index = 0;
+      }
+      return data;
+    }
+
+  }
+
+  /**
+   * Checks the structure of the subtree rooted at node: node counts are within bounds, all leaves
+   * are at the same depth, and every value lies between lower and upper (null for unbounded).
+   * Returns the depth of the subtree's leaves, or -1 if any check fails.
+   */
+  @SuppressWarnings("unchecked")
+  private int checkSubtree(Node node, T lower, T upper, boolean isRoot) {
+    if (node.count > (node instanceof Leaf ? fanOut : fanOut - 1) || !isRoot && node.count == 0) {
+      return -1;
+    }
+    for (int i = 0; i < node.count; i++) {
+      T key = (T) node.keys[i];
+      if (lower != null && key.compareTo(lower) < 0 || upper != null && key.compareTo(upper) > 0
+          || i > 0 && key.compareTo((T) node.keys[i - 1]) < 0) {
+        return -1;
+      }
+    }
+    if (node instanceof Leaf) {
+      return 0;
+    }
+    Inner inner = (Inner) node;
+    int depth = -1;
+    for (int i = 0; i <= inner.count; i++) {
+      T childLower = (i == 0) ? lower : (T) inner.keys[i - 1];
+      T childUpper = (i == inner.count) ? upper : (T) inner.keys[i];
+      int childDepth = checkSubtree(inner.children[i], childLower, childUpper, false);
+      if (childDepth < 0 || depth >= 0 && childDepth != depth) {
+        return -1;
+      }
+      depth = childDepth;
+    }
+    return depth + 1;
+  }
+
+  /**
+   * Returns the leaf holding the smallest values of the tree.
+   */
+  private Leaf firstLeaf() {
+    Node node = root;
+    while (node instanceof Inner) {
+      node = ((Inner) node).children[0];
+    }
+    return (Leaf) node;
+  }
+
+  /**
+   * Tests how leaves split and link up: a full leaf keeps its lower half and the new leaf holding
+   * the upper half is linked in after it, the chain of leaves holds every value in order, and a new
+   * value is placed in front of the values equal to it.
+   */
+  @Test
+  public void Test1() {
+    BPlusTree<Integer> tree = BPlusTree.withFanOut(3);
+    for (int i = 1; i <= 4; i++) {
+      tree.insert(i);
+    }
+    Inner top = (Inner) tree.root;
+    Leaf lower = (Leaf) top.children[0];
+    assertTrue(top.count == 1 && top.keys[0].equals(3) && lower.next == top.children[1]);
+    assertTrue(lower.count == 2 && lower.next.count == 2 && lower.next.next == null);
+    assertTrue(lower.keys[0].equals(1) && lower.next.keys[1].equals(4) && lower.keys[2] == null);
+
+    tree = BPlusTree.withFanOut(4);
+    for (int i = 0; i < 1000; i++) {
+      tree.insert((i * 389) % 500);
+    }
+    assertTrue(tree.checkSubtree(tree.root, null, null, true) > 0);
+    int total = 0;
+    Object previous = null;
+    for (Leaf leaf = tree.firstLeaf(); leaf != null; leaf = leaf.next) {
+      assertTrue(leaf.count >= 2 && leaf.count <= 4);
+      assertTrue(previous == null || ((Integer) previous) <= (Integer) leaf.keys[0]);
+      previous = leaf.keys[leaf.count - 1];
+      total += leaf.count;
+    }
+    assertTrue(total == 1000 && previous.equals(499));
+
+    // 1000 is outside the Integer cache, so these are two different objects
+    Integer older = Integer.valueOf(1000);
+    Integer newer = Integer.valueOf(1000);
+    tree.insert(older);
+    tree.insert(newer);
+    Position<Integer> position = tree.lowerBoundPosition(1000);
+    assertTrue(position.data() == newer);
+    assertThrows(IllegalArgumentException.class, () -> BPlusTree.withFanOut(2));
+  }
+
+  /**
+   * Tests that the depth of the tree stays within log base fanOut/2 of its size, and that a range
+   * whose minimum falls between the last value of one leaf and the first value of the next starts
+   * at the next leaf.
+   */
+  @Test
+  public void Test2() {
+    for (int fanOut : new int[] {3, 4, 7, 64}) {
+      BPlusTree<Integer> tree = BPlusTree.withFanOut(fanOut);
+      for (int i = 0; i < 3000; i++) {
+        tree.insert(2 * i);
+      }
+      int depth = tree.checkSubtree(tree.root, null, null, true);
+      int halfFull = Math.max(2, fanOut / 2);
+      assertTrue(depth >= 0 && depth <= Math.ceil(Math.log(3000) / Math.log(halfFull)));
+
+      for (Leaf leaf = tree.firstLeaf(); leaf.next != null; leaf = leaf.next) {
+        int gap = (Integer) leaf.keys[leaf.count - 1] + 1;
+        List<Integer> range = IterableRedBlackTree.drain(tree.iterator(gap, gap + 3));
+        assertEquals(List.of(gap + 1, gap + 3), range);
+        assertTrue(range.get(0).equals(leaf.next.keys[0]) && !tree.contains(gap));
+      }
+      assertFalse(tree.iterator(5999, null).hasNext());
+    }
+  }
+}
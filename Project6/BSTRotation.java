@@ -6,6 +6,17 @@ public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T> {
   public BSTRotation() {
   }
 
+  /**
+   * Creates an empty tree in scapegoat mode, which rebuilds unbalanced subtrees as values are
+   * inserted (see the matching BinarySearchTree constructor).
+   *
+   * @param alpha the weight-balance factor, strictly between 0.5 and 1
+   * @throws IllegalArgumentException if alpha is not strictly between 0.5 and 1
+   */
+  public BSTRotation(double alpha) throws IllegalArgumentException {
+    super(alpha);
+  }
+
   /**
    * Performs the rotation operation on the provided nodes within this tree. When the provided child
    * is a left child of the provided parent, this method will perform a right rotation. When the
@@ -82,6 +93,10 @@ public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T> {
       grandparent.setChildRight(child);
     }
     child.setParent(grandparent);
+
+    // parent is now below child, so its size has to be fixed first
+    parent.updateSize();
+    child.updateSize();
   }
 
   /**
@@ -123,6 +138,10 @@ public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T> {
       grandparent.setChildRight(child);
     }
     child.setParent(grandparent);
+
+    // parent is now below child, so its size has to be fixed first
+    parent.updateSize();
+    child.updateSize();
   }
 
   /**
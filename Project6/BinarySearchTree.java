@@ -1,3 +1,8 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
 /**
  * This class represents a binary search tree of that uses the SortedCollection interface. We take
  * generic generic type parameters and sort them based on the Comparable interface compareTo()
@@ -9,12 +14,35 @@
 public class BinarySearchTree<T extends Comparable<T>> implements SortedCollection<T> {
   protected BinaryTreeNode<T> root;
 
+  // weight-balance factor of scapegoat mode, or 0 when the tree does not rebalance itself
+  private final double alpha;
+
   /**
    * Initializes an empty Binary Search Tree with the root being null
    */
   public BinarySearchTree() {
     // initializing the root
     root = null;
+    alpha = 0;
+  }
+
+  /**
+   * Initializes an empty Binary Search Tree that keeps itself balanced as a scapegoat tree. When an
+   * insert leaves the new node deeper than log base 1/alpha of the tree's size, the insert walks
+   * back up to the lowest ancestor with a child holding more than alpha of its subtree (the
+   * scapegoat), and rebuilds that subtree into perfect balance in linear time. This gives
+   * amortized O(log n) inserts without storing anything extra in the nodes. Smaller values of
+   * alpha keep the tree flatter but rebuild more often.
+   * 
+   * @param alpha the weight-balance factor, strictly between 0.5 and 1
+   * @throws IllegalArgumentException if alpha is not strictly between 0.5 and 1
+   */
+  public BinarySearchTree(double alpha) throws IllegalArgumentException {
+    if (!(alpha > 0.5 && alpha < 1)) {
+      throw new IllegalArgumentException("Alpha must be strictly between 0.5 and 1.");
+    }
+    root = null;
+    this.alpha = alpha;
   }
 
   /**
@@ -37,90 +65,157 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     if (root == null) {
       root = node;
     } else {
-      insertHelper(node, root);
+      int depth = insertHelper(node, root);
+      if (alpha > 0 && depth > Math.log(size()) / Math.log(1 / alpha)) {
+        rebuild(findScapegoat(node));
+      }
     }
   }
 
   /**
-   * Performs the naive binary search tree insert algorithm to recursively insert the provided
-   * newNode (which has already been initialized with a data value) into the provided tree/subtree.
-   * When the provided subtree is null, this method does nothing.
+   * Performs the naive binary search tree insert algorithm to insert the provided newNode (which
+   * has already been initialized with a data value) into the provided tree/subtree. When the
+   * provided subtree is null, this method does nothing. The subtree size of every node on the path
+   * to newNode is incremented, so subtree must be the root of the tree. The descent is a loop
+   * rather than recursion, so inserting into a degenerate (list-like) tree cannot overflow the
+   * stack.
+   * 
+   * @return the number of levels newNode ended up below subtree, or 0 when subtree is null
    */
-  protected void insertHelper(BinaryTreeNode<T> newNode, BinaryTreeNode<T> subtree) {
-    if (subtree == null) {
-      return;
-    }
+  protected int insertHelper(BinaryTreeNode<T> newNode, BinaryTreeNode<T> subtree) {
+    int depth = 0;
+    while (subtree != null) {
+      depth++;
+      // newNode is going to end up somewhere below subtree
+      subtree.size++;
 
-    // = for the case that a duplicate value is being added
-    if (newNode.getData().compareTo(subtree.getData()) <= 0) {
-      if (subtree.childLeft() == null) {
-        subtree.setChildLeft(newNode);
-        newNode.setParent(subtree);
-      } else {
-        insertHelper(newNode, subtree.childLeft());
-      }
-    } else {
-      if (subtree.childRight() == null) {
-        subtree.setChildRight(newNode);
-        newNode.setParent(subtree);
+      // = for the case that a duplicate value is being added
+      if (newNode.getData().compareTo(subtree.getData()) <= 0) {
+        if (subtree.childLeft() == null) {
+          subtree.setChildLeft(newNode);
+          newNode.setParent(subtree);
+          return depth;
+        }
+        subtree = subtree.childLeft();
       } else {
-        insertHelper(newNode, subtree.childRight());
+        if (subtree.childRight() == null) {
+          subtree.setChildRight(newNode);
+          newNode.setParent(subtree);
+          return depth;
+        }
+        subtree = subtree.childRight();
       }
     }
+    return depth;
   }
 
   /**
-   * Check whether data is stored in the tree.
-   * 
-   * @param data the value to check for in the collection
-   * @return true if the collection contains data one or more times, and false otherwise
+   * Returns the lowest ancestor of node that is not alpha-weight-balanced, meaning that one of its
+   * children holds more than alpha of the values in its subtree. Such an ancestor always exists
+   * when node is deeper than log base 1/alpha of the tree's size; the root is returned otherwise.
    */
-  @Override
-  public boolean contains(Comparable<T> data) {
-    return c(data, root);
+  private BinaryTreeNode<T> findScapegoat(BinaryTreeNode<T> node) {
+    BinaryTreeNode<T> ancestor = node.parent();
+    while (ancestor.parent() != null && node.subtreeSize() <= alpha * ancestor.subtreeSize()) {
+      node = ancestor;
+      ancestor = ancestor.parent();
+    }
+    return ancestor;
   }
 
   /**
-   * Performs the naive binary search tree contains algorithm to recursively search for a value data
-   * within the provided tree/subtree. When the provided subtree is null, this method does nothing.
+   * Rebuilds the subtree rooted at subtree into perfect balance, keeping the same nodes in the same
+   * order and linking the new subtree root where subtree used to be. The nodes are collected in
+   * order with a loop and an explicit stack, since subtree may be degenerate, and then relinked
+   * from the middle outwards, which takes linear time overall.
    */
-  private boolean c(Comparable<T> data, BinaryTreeNode<T> tree) {
-    if (tree == null) {
-      return false;
-    }
+  private void rebuild(BinaryTreeNode<T> subtree) {
+    BinaryTreeNode<T> up = subtree.parent();
+    boolean wasRightChild = subtree.isRightChild();
 
-    int compare = data.compareTo(tree.getData());
+    List<BinaryTreeNode<T>> nodes = new ArrayList<>(subtree.subtreeSize());
+    Deque<BinaryTreeNode<T>> stack = new ArrayDeque<>();
+    BinaryTreeNode<T> current = subtree;
+    while (current != null || !stack.isEmpty()) {
+      while (current != null) {
+        stack.push(current);
+        current = current.childLeft();
+      }
+      current = stack.pop();
+      nodes.add(current);
+      current = current.childRight();
+    }
 
-    if (compare == 0) {
-      return true;
-    } else if (compare < 0) {
-      return c(data, tree.childLeft());
+    BinaryTreeNode<T> balanced = buildBalanced(nodes, 0, nodes.size() - 1);
+    balanced.setParent(up);
+    if (up == null) {
+      root = balanced;
+    } else if (wasRightChild) {
+      up.setChildRight(balanced);
     } else {
-      return c(data, tree.childRight());
+      up.setChildLeft(balanced);
     }
   }
 
   /**
-   * Counts the number of values in the collection, with each duplicate value being counted
-   * separately within the value returned.
-   * 
-   * @return the number of values in the collection, including duplicates
+   * Links nodes[low..high] into a perfectly balanced subtree, with the middle node as its root,
+   * and returns that root (or null for an empty range). Subtree sizes are recomputed bottom up.
    */
-  @Override
-  public int size() {
-    return s(root);
+  private BinaryTreeNode<T> buildBalanced(List<BinaryTreeNode<T>> nodes, int low, int high) {
+    if (low > high) {
+      return null;
+    }
+    int middle = (low + high) >>> 1;
+    BinaryTreeNode<T> node = nodes.get(middle);
+    BinaryTreeNode<T> left = buildBalanced(nodes, low, middle - 1);
+    BinaryTreeNode<T> right = buildBalanced(nodes, middle + 1, high);
+    node.setChildLeft(left);
+    node.setChildRight(right);
+    if (left != null) {
+      left.setParent(node);
+    }
+    if (right != null) {
+      right.setParent(node);
+    }
+    node.updateSize();
+    return node;
   }
 
   /**
-   * Performs the naive binary search tree insert algorithm to recursively add values to find the
-   * size of tree. When the provided subtree is null, this method returns 0.
+   * Check whether data is stored in the tree.
+   * 
+   * @param data the value to check for in the collection
+   * @return true if the collection contains data one or more times, and false otherwise
    */
-  private int s(BinaryTreeNode<T> node) {
-    if (node == null) {
-      return 0;
+  @Override
+  public boolean contains(Comparable<T> data) {
+    BinaryTreeNode<T> tree = root;
+    // performs the naive binary search tree contains algorithm as a loop, following one child
+    // reference per level until data is found or we fall off the bottom of the tree
+    while (tree != null) {
+      int compare = data.compareTo(tree.getData());
+
+      if (compare == 0) {
+        return true;
+      } else if (compare < 0) {
+        tree = tree.childLeft();
+      } else {
+        tree = tree.childRight();
+      }
     }
+    return false;
+  }
 
-    return 1 + s(node.childLeft()) + s(node.childRight());
+  /**
+   * Counts the number of values in the collection, with each duplicate value being counted
+   * separately within the value returned. The count is read from the subtree size stored in the
+   * root, so this runs in constant time.
+   * 
+   * @return the number of values in the collection, including duplicates
+   */
+  @Override
+  public int size() {
+    return BinaryTreeNode.sizeOf(root);
   }
 
   /**
@@ -207,6 +302,65 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     return t3.contains("pig") && t3.contains("badger") && t3.contains("aardvark") && t3.size() == 6;
   }
 
+  /**
+   * Fourth tester method: inserts a long run of already sorted values, which makes the tree
+   * degenerate into a list, and checks that insert, contains and size still work without running
+   * out of stack.
+   */
+  public boolean test4() {
+    BinarySearchTree<Integer> t4 = new BinarySearchTree<>();
+    for (int i = 0; i < 30000; i++) {
+      t4.insert(i);
+    }
+
+    return t4.size() == 30000 && t4.contains(0) && t4.contains(29999) && !t4.contains(30000)
+        && t4.root.childLeft() == null;
+  }
+
+  /**
+   * Fifth tester method: inserts the same sorted run in scapegoat mode, checks that the tree stays
+   * within the height bound and that every subtree size is still right, and checks that an alpha
+   * outside of (0.5, 1) is rejected.
+   */
+  public boolean test5() {
+    try {
+      new BinarySearchTree<Integer>(0.5);
+      return false;
+    } catch (IllegalArgumentException e) {
+    }
+
+    BinarySearchTree<Integer> t5 = new BinarySearchTree<>(0.7);
+    for (int i = 0; i < 30000; i++) {
+      t5.insert(i);
+      t5.insert(i);
+    }
+    int bound = (int) Math.floor(Math.log(t5.size()) / Math.log(1 / 0.7));
+    return t5.size() == 60000 && t5.contains(0) && t5.contains(29999) && !t5.contains(30000)
+        && checkHeight(t5.root) >= 0 && checkHeight(t5.root) <= bound + 1;
+  }
+
+  /**
+   * Returns the height of the subtree rooted at node (1 for a leaf), or -1 if a node in it stores
+   * the wrong subtree size or is not linked back to its parent.
+   */
+  private static int checkHeight(BinaryTreeNode<?> node) {
+    if (node == null) {
+      return 0;
+    }
+    if (node.childLeft() != null && node.childLeft().parent() != node
+        || node.childRight() != null && node.childRight().parent() != node
+        || node.subtreeSize() != 1 + BinaryTreeNode.sizeOf(node.childLeft())
+            + BinaryTreeNode.sizeOf(node.childRight())) {
+      return -1;
+    }
+    int leftHeight = checkHeight(node.childLeft());
+    int rightHeight = checkHeight(node.childRight());
+    if (leftHeight < 0 || rightHeight < 0) {
+      return -1;
+    }
+    return 1 + Math.max(leftHeight, rightHeight);
+  }
+
   public static void main(String[] args) {
     BinarySearchTree<Integer> t1 = new BinarySearchTree<>();
     System.out.println("Test 1: " + (t1.test1() ? "PASS" : "FAIL"));
@@ -216,5 +370,11 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
 
     BinarySearchTree<String> t3 = new BinarySearchTree<>();
     System.out.println("Test 3: " + (t3.test3() ? "PASS" : "FAIL"));
+
+    BinarySearchTree<Integer> t4 = new BinarySearchTree<>();
+    System.out.println("Test 4: " + (t4.test4() ? "PASS" : "FAIL"));
+
+    BinarySearchTree<Integer> t5 = new BinarySearchTree<>();
+    System.out.println("Test 5: " + (t5.test5() ? "PASS" : "FAIL"));
   }
 }
@@ -17,6 +17,8 @@ public class BinaryTreeNode<T> {
   protected BinaryTreeNode<T> left = null;
   // reference to the node's right child
   protected BinaryTreeNode<T> right = null;
+  // number of nodes in the subtree rooted at this node, including this node itself
+  protected int size = 1;
 
   /**
    * Constructor that creates a new node with the value data. Both parent and child references of
@@ -56,6 +58,53 @@ public class BinaryTreeNode<T> {
     return this.up;
   }
 
+  /**
+   * @return the number of nodes in the subtree rooted at this node, including this node
+   */
+  public int subtreeSize() {
+    return this.size;
+  }
+
+  /**
+   * Returns the number of nodes in the subtree rooted at node, or 0 when node is null.
+   * 
+   * @param node the root of the subtree to count, or null for an empty subtree
+   * @return the size stored for that subtree
+   */
+  public static int sizeOf(BinaryTreeNode<?> node) {
+    return node == null ? 0 : node.size;
+  }
+
+  /**
+   * Returns the number of values this node stands for. This is 1, unless a subclass stores several
+   * equal values in a single node.
+   * 
+   * @return the number of values held by this node
+   */
+  public int multiplicity() {
+    return 1;
+  }
+
+  /**
+   * Returns the value at position index among the multiplicity() values this node stands for, in
+   * iteration order. Unless a subclass stores several values in a node, this is always the node's
+   * own value.
+   * 
+   * @param index the position of the value, from 0 to multiplicity() - 1
+   * @return the value at that position
+   */
+  public T valueAt(int index) {
+    return this.data;
+  }
+
+  /**
+   * Recomputes the subtree size stored in this node from the sizes stored in its children. The
+   * children's sizes must already be correct when this method is called.
+   */
+  public void updateSize() {
+    this.size = multiplicity() + sizeOf(this.left) + sizeOf(this.right);
+  }
+
   /**
    * Gives this node a new value and deletes the old value.
    * 
@@ -0,0 +1,314 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * This class represents a red-black tree that can be shared between threads. Inserts, including
+ * the rotations they perform, hold a write lock. Lookups first descend the tree without taking any
+ * lock and then check that no write happened in the meantime; only when one did do they retry under
+ * a read lock. Many reader threads can therefore run at the same time, and they do not block each
+ * other or write to any shared memory while a lookup succeeds.
+ */
+public class ConcurrentRedBlackTree<T extends Comparable<T>>
+    implements IterableSortedCollection<T> {
+
+  // upper bound on the number of nodes an optimistic descent visits before it gives up; any
+  // consistent red-black tree with at most Integer.MAX_VALUE nodes is less than 64 levels deep,
+  // so a longer walk can only mean the descent raced with a rotation
+  private static final int MAX_OPTIMISTIC_STEPS = 64;
+
+  // the tree holding the values, guarded by lock
+  private final IterableRedBlackTree<T> tree = new IterableRedBlackTree<>();
+  private final StampedLock lock = new StampedLock();
+  // returned by an optimistic descent that gave up before reaching the bottom of the tree
+  private final BinaryTreeNode<T> retry = new BinaryTreeNode<>(null);
+
+  private volatile Comparable<T> maximum = null;
+  private volatile Comparable<T> minimum = null;
+
+  /**
+   * Inserts a new data value into the tree while holding the write lock.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException if data argument is null, we do not allow null values to be stored
+   *                              within a SortedCollection
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    long stamp = lock.writeLock();
+    try {
+      tree.insert(data);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Check whether data is stored in the tree.
+   *
+   * @param data the value to check for in the collection
+   * @return true if the collection contains data one or more times, and false otherwise
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean contains(Comparable<T> data) throws NullPointerException {
+    T floor = floor(data);
+    return floor != null && data.compareTo(floor) == 0;
+  }
+
+  /**
+   * Returns the largest value in this tree that is smaller than or equal to key.
+   *
+   * @param key the value to compare against
+   * @return the closest value at or below key, or null if there is none
+   * @throws NullPointerException if key is null
+   */
+  public T floor(Comparable<T> key) throws NullPointerException {
+    return nearest(key, true);
+  }
+
+  /**
+   * Returns the smallest value in this tree that is greater than or equal to key.
+   *
+   * @param key the value to compare against
+   * @return the closest value at or above key, or null if there is none
+   * @throws NullPointerException if key is null
+   */
+  public T ceiling(Comparable<T> key) throws NullPointerException {
+    return nearest(key, false);
+  }
+
+  /**
+   * Finds the closest value to key on one side of it, including key itself. The descent runs
+   * optimistically first, and its result is only used if no write started or finished while it
+   * ran. A descent that raced with a write may follow half-updated links, so it is bounded by
+   * MAX_OPTIMISTIC_STEPS and any exception it throws is discarded; in both cases, as well as when
+   * validation fails, the descent is repeated under the read lock.
+   *
+   * @return the closest value, or null if there is no value on that side of key
+   * @throws NullPointerException if key is null
+   */
+  private T nearest(Comparable<T> key, boolean below) {
+    if (key == null) {
+      throw new NullPointerException("Key is null.");
+    }
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0L) {
+      try {
+        BinaryTreeNode<T> result = descend(key, below, MAX_OPTIMISTIC_STEPS);
+        if (result != retry && lock.validate(stamp)) {
+          return (result == null) ? null : result.getData();
+        }
+      } catch (RuntimeException e) {
+        // the descent saw the tree in the middle of a write; retry under the read lock
+      }
+    }
+    stamp = lock.readLock();
+    try {
+      BinaryTreeNode<T> result = descend(key, below, Integer.MAX_VALUE);
+      return (result == null) ? null : result.getData();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Descends from the root towards key, remembering the closest node seen so far on the requested
+   * side of key. Gives up and returns retry after visiting maxSteps nodes.
+   */
+  private BinaryTreeNode<T> descend(Comparable<T> key, boolean below, int maxSteps) {
+    BinaryTreeNode<T> best = null;
+    BinaryTreeNode<T> node = tree.root;
+    for (int steps = 0; node != null; steps++) {
+      if (steps == maxSteps) {
+        return retry;
+      }
+      int compare = key.compareTo(node.getData());
+      if (compare == 0) {
+        return node;
+      }
+      if (below == compare > 0) {
+        best = node;
+      }
+      node = (compare < 0) ? node.childLeft() : node.childRight();
+    }
+    return best;
+  }
+
+  /**
+   * Counts the number of values in the tree, with each duplicate value being counted separately
+   * within the value returned.
+   *
+   * @return the number of values in the collection, including duplicates
+   */
+  @Override
+  public int size() {
+    long stamp = lock.tryOptimisticRead();
+    int size = tree.size();
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        size = tree.size();
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Checks if the collection is empty.
+   *
+   * @return true if the collection contains 0 values, false otherwise
+   */
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Removes all values and duplicates from the collection.
+   */
+  @Override
+  public void clear() {
+    long stamp = lock.writeLock();
+    try {
+      tree.clear();
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Allows setting the start (minimum) value of the iterator. When this method is called, every
+   * iterator created after it will use the minimum set by this method until this method is called
+   * again to set a new minimum value.
+   *
+   * @param min the minimum for iterators created for this tree, or null for no minimum
+   */
+  @Override
+  public void setIteratorMin(Comparable<T> min) {
+    this.minimum = min;
+  }
+
+  /**
+   * Allows setting the stop (maximum) value of the iterator. When this method is called, every
+   * iterator created after it will use the maximum set by this method until this method is called
+   * again to set a new maximum value.
+   *
+   * @param max the maximum for iterators created for this tree, or null for no maximum
+   */
+  @Override
+  public void setIteratorMax(Comparable<T> max) {
+    this.maximum = max;
+  }
+
+  /**
+   * Returns an iterator over the values in the tree, using the minimum and maximum set by
+   * setIteratorMin and setIteratorMax.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(this.minimum, this.maximum);
+  }
+
+  /**
+   * Returns an iterator over the values between min and max (inclusive). A null min or max leaves
+   * that end of the range unbounded. The values in range are copied while holding the read lock,
+   * so the iterator sees a consistent view of the tree and is not affected by later inserts; this
+   * costs time and memory proportional to the number of values in range.
+   *
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return an unmodifiable iterator over the values in that range
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    List<T> values = new ArrayList<>();
+    long stamp = lock.readLock();
+    try {
+      tree.iterator(min, max).forEachRemaining(values::add);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+    return Collections.unmodifiableList(values).iterator();
+  }
+
+  /**
+   * Tests the single threaded behavior of lookups, size and range iteration.
+   */
+  @Test
+  public void Test1() {
+    ConcurrentRedBlackTree<Integer> tree = new ConcurrentRedBlackTree<>();
+    assertTrue(tree.isEmpty() && tree.floor(5) == null && !tree.iterator().hasNext());
+    for (int i = 0; i < 100; i++) {
+      tree.insert((i * 37) % 100 * 2);
+    }
+    assertTrue(tree.size() == 100 && tree.contains(0) && tree.contains(198));
+    assertFalse(tree.contains(7) || tree.contains(-2) || tree.contains(200));
+    assertTrue(tree.floor(7) == 6 && tree.ceiling(7) == 8 && tree.floor(8) == 8);
+    assertTrue(tree.floor(-1) == null && tree.ceiling(199) == null);
+
+    tree.setIteratorMin(10);
+    tree.setIteratorMax(20);
+    List<Integer> values = new ArrayList<>();
+    tree.iterator().forEachRemaining(values::add);
+    assertEquals(List.of(10, 12, 14, 16, 18, 20), values);
+    assertThrows(NullPointerException.class, () -> tree.contains(null));
+
+    tree.clear();
+    assertTrue(tree.isEmpty() && !tree.contains(10));
+  }
+
+  /**
+   * Tests that readers running alongside a loader thread always find the values inserted before
+   * their lookup started.
+   */
+  @Test
+  public void Test2() throws InterruptedException {
+    ConcurrentRedBlackTree<Integer> tree = new ConcurrentRedBlackTree<>();
+    int n = 20000;
+    AtomicInteger inserted = new AtomicInteger();
+    AtomicBoolean failed = new AtomicBoolean();
+
+    Thread loader = new Thread(() -> {
+      for (int i = 0; i < n; i++) {
+        tree.insert(i * 2);
+        inserted.set(i + 1);
+      }
+    });
+    List<Thread> readers = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      readers.add(new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (inserted.get() < n) {
+          int known = inserted.get();
+          if (known == 0) {
+            continue;
+          }
+          int value = random.nextInt(known) * 2;
+          if (!tree.contains(value) || tree.floor(value + 1) < value
+              || tree.ceiling(value - 1) > value) {
+            failed.set(true);
+          }
+        }
+      }));
+    }
+    loader.start();
+    readers.forEach(Thread::start);
+    loader.join();
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    assertFalse(failed.get());
+    assertTrue(tree.size() == n && tree.contains(0) && tree.contains(2 * n - 2));
+  }
+}
@@ -0,0 +1,64 @@
+import java.util.PrimitiveIterator;
+
+/**
+ * This interface defines an ADT for data structures that store a collection of int values in
+ * ascending order, like IterableSortedCollection does for comparable objects, but without boxing
+ * the values into Integers.
+ */
+public interface IntIterableSortedCollection {
+
+  /**
+   * Inserts a new value into the sorted collection.
+   *
+   * @param key the new value being inserted
+   */
+  public void insert(int key);
+
+  /**
+   * Check whether key is stored in the collection.
+   *
+   * @param key the value to check for in the collection
+   * @return true if the collection contains key one or more times, and false otherwise
+   */
+  public boolean contains(int key);
+
+  /**
+   * Counts the number of values in the collection, with each duplicate value being counted
+   * separately within the value returned.
+   *
+   * @return the number of values in the collection, including duplicates
+   */
+  public int size();
+
+  /**
+   * Checks if the collection is empty.
+   *
+   * @return true if the collection contains 0 values, false otherwise
+   */
+  public boolean isEmpty();
+
+  /**
+   * Removes all values and duplicates from the collection.
+   */
+  public void clear();
+
+  /**
+   * Returns an iterator over the values between min and max, including min and max themselves, in
+   * ascending order. The iterator is empty when min is greater than max.
+   *
+   * @param min the smallest value to return
+   * @param max the largest value to return
+   * @return an iterator over the values in that range
+   */
+  public PrimitiveIterator.OfInt rangeIterator(int min, int max);
+
+  /**
+   * Returns an iterator over every value in the collection, in ascending order.
+   *
+   * @return an iterator over all values
+   */
+  public default PrimitiveIterator.OfInt iterator() {
+    return rangeIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+}
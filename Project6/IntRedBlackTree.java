@@ -0,0 +1,380 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * This class represents a red-black tree of int values. Instead of one node object per value, the
+ * tree keeps each node's key, links and color in parallel arrays, and a node is just an index into
+ * those arrays. Index 0 is a shared black sentinel that stands in for every missing child and for
+ * the parent of the root, so the rebalancing code never has to check for null. Keys are compared
+ * as ints and never boxed.
+ *
+ * Like in BinarySearchTree, duplicate values are allowed and go into the left subtree of the
+ * values equal to them.
+ */
+public class IntRedBlackTree implements IntIterableSortedCollection {
+
+  // index of the sentinel node
+  private static final int NIL = 0;
+  // number of nodes the arrays can hold when the tree is created, not counting the sentinel
+  private static final int INITIAL_CAPACITY = 16;
+
+  // the fields of node i are key[i], left[i], right[i], parent[i] and red[i]
+  private int[] key;
+  private int[] left;
+  private int[] right;
+  private int[] parent;
+  private boolean[] red;
+
+  // index of the root node, or NIL when the tree is empty
+  private int root = NIL;
+  // number of values in the tree; the nodes in use are the ones at indices 1 to size
+  private int size = 0;
+
+  /**
+   * Creates an empty tree.
+   */
+  public IntRedBlackTree() {
+    key = new int[INITIAL_CAPACITY + 1];
+    left = new int[INITIAL_CAPACITY + 1];
+    right = new int[INITIAL_CAPACITY + 1];
+    parent = new int[INITIAL_CAPACITY + 1];
+    red = new boolean[INITIAL_CAPACITY + 1];
+  }
+
+  /**
+   * Doubles the length of the node arrays, keeping the nodes in use.
+   */
+  private void grow() {
+    int length = 2 * key.length;
+    key = Arrays.copyOf(key, length);
+    left = Arrays.copyOf(left, length);
+    right = Arrays.copyOf(right, length);
+    parent = Arrays.copyOf(parent, length);
+    red = Arrays.copyOf(red, length);
+  }
+
+  /**
+   * Inserts a new value into the tree, and then restores the red-black properties. The node arrays
+   * double in length whenever they are full.
+   *
+   * @param value the new value being inserted
+   */
+  @Override
+  public void insert(int value) {
+    if (size + 1 == key.length) {
+      grow();
+    }
+    int node = ++size;
+    key[node] = value;
+    left[node] = NIL;
+    right[node] = NIL;
+    red[node] = true;
+
+    int up = NIL;
+    int current = root;
+    while (current != NIL) {
+      up = current;
+      current = (value <= key[current]) ? left[current] : right[current];
+    }
+    parent[node] = up;
+    if (up == NIL) {
+      root = node;
+    } else if (value <= key[up]) {
+      left[up] = node;
+    } else {
+      right[up] = node;
+    }
+    ensureRedProperty(node);
+  }
+
+  /**
+   * Repairs a red node whose parent may also be red. A red aunt is recolored black together with
+   * the parent, which moves the problem up to the grandparent; a black aunt is handled with one or
+   * two rotations, after which the tree is valid again. The sentinel is black, so the loop stops
+   * at the root.
+   */
+  private void ensureRedProperty(int node) {
+    while (red[parent[node]]) {
+      int up = parent[node];
+      int grand = parent[up];
+      boolean parentIsLeft = (up == left[grand]);
+      int aunt = parentIsLeft ? right[grand] : left[grand];
+      if (red[aunt]) {
+        red[up] = false;
+        red[aunt] = false;
+        red[grand] = true;
+        node = grand;
+        continue;
+      }
+      if (node == (parentIsLeft ? right[up] : left[up])) {
+        // inner child: rotate it into the parent's position first
+        node = up;
+        rotate(node, parentIsLeft);
+        up = parent[node];
+      }
+      red[up] = false;
+      red[grand] = true;
+      rotate(grand, !parentIsLeft);
+    }
+    red[root] = false;
+  }
+
+  /**
+   * Rotates node down to the left (when toLeft is true) or to the right, so that its right or left
+   * child takes its place.
+   */
+  private void rotate(int node, boolean toLeft) {
+    int child = toLeft ? right[node] : left[node];
+    int inner = toLeft ? left[child] : right[child];
+    if (toLeft) {
+      right[node] = inner;
+      left[child] = node;
+    } else {
+      left[node] = inner;
+      right[child] = node;
+    }
+    if (inner != NIL) {
+      parent[inner] = node;
+    }
+
+    int up = parent[node];
+    parent[child] = up;
+    if (up == NIL) {
+      root = child;
+    } else if (node == left[up]) {
+      left[up] = child;
+    } else {
+      right[up] = child;
+    }
+    parent[node] = child;
+  }
+
+  /**
+   * Check whether value is stored in the tree.
+   *
+   * @param value the value to check for in the collection
+   * @return true if the collection contains value one or more times, and false otherwise
+   */
+  @Override
+  public boolean contains(int value) {
+    int node = root;
+    while (node != NIL) {
+      if (value == key[node]) {
+        return true;
+      }
+      node = (value < key[node]) ? left[node] : right[node];
+    }
+    return false;
+  }
+
+  /**
+   * Counts the number of values in the tree, with each duplicate value being counted separately
+   * within the value returned.
+   *
+   * @return the number of values in the collection, including duplicates
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Checks if the collection is empty.
+   *
+   * @return true if the collection contains 0 values, false otherwise
+   */
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes all values and duplicates from the collection. The node arrays are kept, so the tree
+   * can be refilled to its previous size without allocating.
+   */
+  @Override
+  public void clear() {
+    root = NIL;
+    size = 0;
+  }
+
+  /**
+   * Returns an iterator over the values between min and max (inclusive), in ascending order. The
+   * first value is found with one descent from the root, and each following one by stepping to the
+   * successor through the parent links, so the iterator only needs O(1) memory.
+   *
+   * @param min the smallest value to return
+   * @param max the largest value to return
+   * @return an iterator over the values in that range
+   */
+  @Override
+  public PrimitiveIterator.OfInt rangeIterator(int min, int max) {
+    int first = NIL;
+    int node = root;
+    while (node != NIL) {
+      if (key[node] >= min) {
+        first = node;
+        node = left[node];
+      } else {
+        node = right[node];
+      }
+    }
+    return new IntRangeIterator(first, max);
+  }
+
+  /**
+   * Returns the node that follows node in ascending order, or NIL if node holds the largest value.
+   */
+  private int successor(int node) {
+    if (right[node] != NIL) {
+      node = right[node];
+      while (left[node] != NIL) {
+        node = left[node];
+      }
+      return node;
+    }
+    int up = parent[node];
+    while (up != NIL && node == right[up]) {
+      node = up;
+      up = parent[up];
+    }
+    return up;
+  }
+
+  /**
+   * Nested class for the iterators of an IntRedBlackTree. They must not be used after the tree is
+   * changed.
+   */
+  private class IntRangeIterator implements PrimitiveIterator.OfInt {
+
+    // the node whose value nextInt() returns, or NIL at the end of the tree
+    private int next;
+    // stores the stop point (maximum) for the iterator
+    private final int max;
+
+    private IntRangeIterator(int first, int max) {
+      this.next = first;
+      this.max = max;
+    }
+
+    /**
+     * Returns true if the iterator has another value to return, and false otherwise.
+     */
+    public boolean hasNext() {
+      return next != NIL && key[next] <= max;
+    }
+
+    /**
+     * Returns the next value of the iterator.
+     *
+     * @throws NoSuchElementException if the iterator has no more values to return
+     */
+    public int nextInt() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more values in range.");
+      }
+      int value = key[next];
+      next = successor(next);
+      return value;
+    }
+
+  }
+
+  /**
+   * Returns the black height of the subtree rooted at node, or -1 if it breaks the red property,
+   * has paths with different numbers of black nodes, holds values outside of [low, high], or has
+   * a child whose parent link does not point back to its parent.
+   */
+  private int checkSubtree(int node, long low, long high) {
+    if (node == NIL) {
+      return 0;
+    }
+    if (key[node] < low || key[node] > high
+        || red[node] && (red[left[node]] || red[right[node]])
+        || left[node] != NIL && parent[left[node]] != node
+        || right[node] != NIL && parent[right[node]] != node) {
+      return -1;
+    }
+    int leftHeight = checkSubtree(left[node], low, key[node]);
+    int rightHeight = checkSubtree(right[node], key[node], high);
+    if (leftHeight < 0 || leftHeight != rightHeight) {
+      return -1;
+    }
+    return leftHeight + (red[node] ? 0 : 1);
+  }
+
+  /**
+   * Collects every value returned by iterator into an array. The tests of
+   * OffHeapIntSortedCollection use it too.
+   */
+  static int[] drain(PrimitiveIterator.OfInt iterator) {
+    int[] values = new int[16];
+    int count = 0;
+    while (iterator.hasNext()) {
+      if (count == values.length) {
+        values = Arrays.copyOf(values, 2 * count);
+      }
+      values[count++] = iterator.nextInt();
+    }
+    return Arrays.copyOf(values, count);
+  }
+
+  /**
+   * Tests the array layout: the nodes in use are indices 1 to size in insertion order, the arrays
+   * double together when they are full, the sentinel stays black, and clear keeps the arrays so
+   * that the tree refills the same indices without growing.
+   */
+  @Test
+  public void Test1() {
+    IntRedBlackTree tree = new IntRedBlackTree();
+    for (int i = 0; i < INITIAL_CAPACITY; i++) {
+      tree.insert(100 - i);
+    }
+    assertTrue(tree.key.length == INITIAL_CAPACITY + 1 && tree.key[1] == 100 && tree.key[16] == 85);
+    tree.insert(0);
+    assertTrue(tree.key.length == 2 * (INITIAL_CAPACITY + 1) && tree.key[17] == 0);
+    assertTrue(tree.left.length == tree.key.length && tree.red.length == tree.key.length);
+    assertTrue(!tree.red[NIL] && tree.parent[tree.root] == NIL && !tree.red[tree.root]);
+    assertTrue(tree.checkSubtree(tree.root, Long.MIN_VALUE, Long.MAX_VALUE) > 0);
+
+    int length = tree.key.length;
+    tree.clear();
+    assertTrue(tree.isEmpty() && tree.key.length == length && !tree.iterator().hasNext());
+    for (int i = 0; i < 20; i++) {
+      tree.insert(i);
+    }
+    assertTrue(tree.key.length == length && tree.key[20] == 19 && tree.size() == 20);
+    assertArrayEquals(new int[] {18, 19}, drain(tree.rangeIterator(18, 1000)));
+  }
+
+  /**
+   * Tests that keys at both ends of the int range are compared without overflowing, in lookups and
+   * in range bounds, and that a long ascending run stays within the red-black height bound.
+   */
+  @Test
+  public void Test2() {
+    IntRedBlackTree tree = new IntRedBlackTree();
+    for (int value : new int[] {0, Integer.MAX_VALUE, Integer.MIN_VALUE, -1, Integer.MAX_VALUE}) {
+      tree.insert(value);
+    }
+    assertTrue(tree.contains(Integer.MIN_VALUE) && !tree.contains(Integer.MIN_VALUE + 1));
+    int[] all = drain(tree.rangeIterator(Integer.MIN_VALUE, Integer.MAX_VALUE));
+    assertArrayEquals(new int[] {Integer.MIN_VALUE, -1, 0, Integer.MAX_VALUE, Integer.MAX_VALUE},
+        all);
+    assertArrayEquals(new int[] {Integer.MAX_VALUE, Integer.MAX_VALUE},
+        drain(tree.rangeIterator(Integer.MAX_VALUE, Integer.MAX_VALUE)));
+    assertTrue(drain(tree.rangeIterator(Integer.MAX_VALUE, Integer.MIN_VALUE)).length == 0);
+    assertThrows(NoSuchElementException.class, () -> tree.rangeIterator(1, -2).nextInt());
+
+    IntRedBlackTree sorted = new IntRedBlackTree();
+    for (int i = 0; i < 100000; i++) {
+      sorted.insert(i);
+    }
+    int blackHeight = sorted.checkSubtree(sorted.root, Long.MIN_VALUE, Long.MAX_VALUE);
+    assertTrue(blackHeight > 0 && 2 * blackHeight <= 2 * Math.log(100001) / Math.log(2) + 1);
+    assertTrue(sorted.contains(99999) && !sorted.contains(100000));
+  }
+}
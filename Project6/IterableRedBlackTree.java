@@ -1,6 +1,17 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.Stack;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class extends RedBlackTree into a tree that supports iterating over the values it stores in
@@ -12,6 +23,95 @@ public class IterableRedBlackTree<T extends Comparable<T>> extends RedBlackTree<
   private Comparable<T> maximum = null;
   private Comparable<T> minimum = null;
 
+  /**
+   * Creates an iterable red-black tree holding the first n values produced by values, which must
+   * come out in ascending order. Runs in O(n) time, see RedBlackTree.fromSorted.
+   * 
+   * @param values produces the values to store, in ascending order
+   * @param n      the number of values to take from values
+   * @return a new tree holding those values
+   * @throws IllegalArgumentException if n is negative or the values are not in ascending order
+   * @throws NullPointerException     if any of the values is null
+   * @throws NoSuchElementException   if values produces fewer than n values
+   */
+  public static <T extends Comparable<T>> IterableRedBlackTree<T> fromSorted(
+      Iterator<? extends T> values, int n)
+      throws IllegalArgumentException, NullPointerException, NoSuchElementException {
+    IterableRedBlackTree<T> tree = new IterableRedBlackTree<>();
+    tree.buildFromSorted(values, n);
+    return tree;
+  }
+
+  /**
+   * Creates an iterable red-black tree holding every value in values, sorting a copy of them first
+   * when they are not already in ascending order. See RedBlackTree.buildFrom.
+   * 
+   * @param values the values to store, which are not modified
+   * @return a new tree holding those values
+   * @throws NullPointerException if any of the values is null
+   */
+  public static <T extends Comparable<T>> IterableRedBlackTree<T> buildFrom(
+      List<? extends T> values) throws NullPointerException {
+    IterableRedBlackTree<T> tree = new IterableRedBlackTree<>();
+    List<? extends T> sorted = sortedView(values);
+    tree.buildFromSorted(sorted.iterator(), sorted.size());
+    return tree;
+  }
+
+  /**
+   * Creates an iterable red-black tree holding every value in values, sorting and building it in
+   * parallel on the fork/join common pool. See RedBlackTree.buildFromParallel.
+   * 
+   * @param values the values to store, which are not modified
+   * @return a new tree holding those values
+   * @throws NullPointerException if any of the values is null
+   */
+  public static <T extends Comparable<T>> IterableRedBlackTree<T> buildFromParallel(
+      Collection<? extends T> values) throws NullPointerException {
+    IterableRedBlackTree<T> tree = new IterableRedBlackTree<>();
+    tree.buildFromSortedArray(sortedArray(values));
+    return tree;
+  }
+
+  /**
+   * Creates an iterable tree holding every value of left, then pivot, then every value of right,
+   * and leaves left and right empty. See RedBlackTree.join.
+   * 
+   * @param left  the tree with the smaller values
+   * @param pivot the value that goes between the two trees
+   * @param right the tree with the larger values
+   * @return a new tree holding all of the values
+   * @throws NullPointerException     if any argument is null
+   * @throws IllegalArgumentException if the values are not in order, or left and right are the same
+   *                                  non-empty tree
+   */
+  public static <T extends Comparable<T>> IterableRedBlackTree<T> join(
+      IterableRedBlackTree<T> left, T pivot, IterableRedBlackTree<T> right)
+      throws NullPointerException, IllegalArgumentException {
+    return (IterableRedBlackTree<T>) RedBlackTree.join(left, pivot, right);
+  }
+
+  /**
+   * Moves every value greater than or equal to key into a new iterable tree, which is returned,
+   * and keeps every value smaller than key in this tree. See RedBlackTree.split.
+   * 
+   * @param key the value to split at
+   * @return a new tree holding the values of this tree that are greater than or equal to key
+   * @throws NullPointerException if key is null
+   */
+  @Override
+  public IterableRedBlackTree<T> split(Comparable<T> key) throws NullPointerException {
+    return (IterableRedBlackTree<T>) super.split(key);
+  }
+
+  /**
+   * Creates a new, empty iterable tree, so that split and join produce iterable trees.
+   */
+  @Override
+  protected IterableRedBlackTree<T> createEmpty() {
+    return new IterableRedBlackTree<>();
+  }
+
   /**
    * Allows setting the start (minimum) value of the iterator. When this method is called, every
    * iterator created after it will use the minimum set by this method until this method is called
@@ -44,13 +144,333 @@ public class IterableRedBlackTree<T extends Comparable<T>> extends RedBlackTree<
    * exists in the tree.
    */
   public Iterator<T> iterator() {
-    return new RBTIterator<>(this.root, this.minimum, this.maximum);
+    return iterator(this.minimum, this.maximum);
+  }
+
+  /**
+   * Returns an iterator over the values between min and max (inclusive) stored in this tree. A
+   * null min or max leaves that end of the range unbounded. Unlike iterator(), this does not read
+   * or change the bounds set by setIteratorMin and setIteratorMax.
+   * 
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return an iterator over the values in that range
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    return new RBTIterator<>(this.root, min, max);
+  }
+
+  /**
+   * Returns a spliterator over the values stored in this tree, using the same start (minimum) and
+   * stop (maximum) values as iterator(). The spliterator knows its exact size from the subtree
+   * sizes stored in the tree and splits at subtree boundaries, so parallel streams divide the work
+   * evenly across threads.
+   */
+  @Override
+  public Spliterator<T> spliterator() {
+    return spliterator(this.minimum, this.maximum);
+  }
+
+  /**
+   * Returns a spliterator over the values between min and max (inclusive) stored in this tree. A
+   * null min or max leaves that end of the range unbounded. The tree must not be modified while the
+   * spliterator is in use.
+   * 
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return a spliterator over the values in that range
+   */
+  public Spliterator<T> spliterator(Comparable<T> min, Comparable<T> max) {
+    int start = (min == null) ? 0 : rank(min);
+    return new RBTSpliterator<>(this.root, start, start + countInRange(min, max));
+  }
+
+  /**
+   * Returns a sequential stream of the values stored in this tree, in ascending order, using the
+   * same minimum and maximum as iterator(). Call parallel() on it to spread the work across cores.
+   * 
+   * @return a stream of the values in this tree
+   */
+  public Stream<T> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  /**
+   * Returns a sequential stream of the values between min and max (inclusive) stored in this tree,
+   * in ascending order. A null min or max leaves that end of the range unbounded.
+   * 
+   * @param min the smallest value in the stream, or null for no minimum
+   * @param max the largest value in the stream, or null for no maximum
+   * @return a stream of the values in that range
+   */
+  public Stream<T> stream(Comparable<T> min, Comparable<T> max) {
+    return StreamSupport.stream(spliterator(min, max), false);
+  }
+
+  /**
+   * Returns the largest value in this tree that is smaller than or equal to key.
+   * 
+   * @param key the value to compare against
+   * @return the closest value at or below key, or null if there is none
+   */
+  public T floor(Comparable<T> key) {
+    return dataOf(nearest(key, true, true));
+  }
+
+  /**
+   * Returns the smallest value in this tree that is greater than or equal to key.
+   * 
+   * @param key the value to compare against
+   * @return the closest value at or above key, or null if there is none
+   */
+  public T ceiling(Comparable<T> key) {
+    return dataOf(nearest(key, false, true));
+  }
+
+  /**
+   * Returns the smallest value in this tree that is strictly greater than key.
+   * 
+   * @param key the value to compare against
+   * @return the closest value above key, or null if there is none
+   */
+  public T higher(Comparable<T> key) {
+    return dataOf(nearest(key, false, false));
+  }
+
+  /**
+   * Returns the largest value in this tree that is strictly smaller than key.
+   * 
+   * @param key the value to compare against
+   * @return the closest value below key, or null if there is none
+   */
+  public T lower(Comparable<T> key) {
+    return dataOf(nearest(key, true, false));
+  }
+
+  /**
+   * Returns the smallest value in this tree.
+   * 
+   * @return the smallest value
+   * @throws NoSuchElementException if the tree is empty
+   */
+  public T first() throws NoSuchElementException {
+    if (root == null) {
+      throw new NoSuchElementException("Tree is empty.");
+    }
+    BinaryTreeNode<T> node = root;
+    while (node.childLeft() != null) {
+      node = node.childLeft();
+    }
+    return node.getData();
+  }
+
+  /**
+   * Returns the largest value in this tree.
+   * 
+   * @return the largest value
+   * @throws NoSuchElementException if the tree is empty
+   */
+  public T last() throws NoSuchElementException {
+    if (root == null) {
+      throw new NoSuchElementException("Tree is empty.");
+    }
+    BinaryTreeNode<T> node = root;
+    while (node.childRight() != null) {
+      node = node.childRight();
+    }
+    return node.getData();
+  }
+
+  /**
+   * Removes and returns the smallest value in this tree, or returns null if the tree is empty.
+   * 
+   * @return the value that was removed, or null
+   */
+  public T pollFirst() {
+    return (root == null) ? null : removeFirst();
+  }
+
+  /**
+   * Removes and returns the largest value in this tree, or returns null if the tree is empty.
+   * 
+   * @return the value that was removed, or null
+   */
+  public T pollLast() {
+    return (root == null) ? null : removeLast();
+  }
+
+  /**
+   * Returns an iterator over every value stored in this tree in descending order.
+   * 
+   * @return an iterator from the largest value down to the smallest
+   */
+  public Iterator<T> descendingIterator() {
+    return descendingIterator(null, null);
+  }
+
+  /**
+   * Returns an iterator over the values between min and max (inclusive) stored in this tree, in
+   * descending order. A null min or max leaves that end of the range unbounded. The iterator starts
+   * at the largest value at or below max, found in O(log n) time, and then steps to each
+   * predecessor by following parent references, so it needs no stack at all.
+   * 
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return an iterator over the values in that range, from largest to smallest
+   */
+  public Iterator<T> descendingIterator(Comparable<T> min, Comparable<T> max) {
+    BinaryTreeNode<T> start;
+    if (max != null) {
+      start = nearest(max, true, true);
+    } else {
+      start = root;
+      while (start != null && start.childRight() != null) {
+        start = start.childRight();
+      }
+    }
+    return new DescendingRBTIterator<>(start, min);
+  }
+
+  /**
+   * Finds the node closest to key on one side of it in a single descent from the root. When below
+   * is true this is the largest value smaller than key, otherwise the smallest value greater than
+   * key; when inclusive is true a value equal to key also qualifies.
+   * 
+   * @return the closest node, or null if there is no value on that side of key
+   * @throws NullPointerException if key is null
+   */
+  private BinaryTreeNode<T> nearest(Comparable<T> key, boolean below, boolean inclusive) {
+    if (key == null) {
+      throw new NullPointerException("Key is null.");
+    }
+    BinaryTreeNode<T> best = null;
+    BinaryTreeNode<T> node = root;
+    while (node != null) {
+      int compare = key.compareTo(node.getData());
+      // whether node lies on the requested side of key
+      boolean qualifies = (compare == 0) ? inclusive : (below ? compare > 0 : compare < 0);
+      if (qualifies) {
+        best = node;
+      }
+      // look for a closer value further towards key
+      if (below ? qualifies : !qualifies) {
+        node = node.childRight();
+      } else {
+        node = node.childLeft();
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @return the value stored in node, or null if node is null
+   */
+  private static <R> R dataOf(BinaryTreeNode<R> node) {
+    return (node == null) ? null : node.getData();
+  }
+
+  /**
+   * Returns a view of the values in this tree between min and max, including min and max
+   * themselves. A null min or max leaves that end of the range unbounded. The view is backed by
+   * this tree, so values inserted later show up in it when they fall inside the range.
+   * 
+   * @param min the smallest value in the view, or null for no minimum
+   * @param max the largest value in the view, or null for no maximum
+   * @return a view of the values in that range
+   */
+  public RangeView subSet(Comparable<T> min, Comparable<T> max) {
+    return new RangeView(min, max);
+  }
+
+  /**
+   * Returns a view of the values in this tree that are smaller than or equal to max.
+   * 
+   * @param max the largest value in the view
+   * @return a view of the values up to max
+   */
+  public RangeView headSet(Comparable<T> max) {
+    return new RangeView(null, max);
+  }
+
+  /**
+   * Returns a view of the values in this tree that are greater than or equal to min.
+   * 
+   * @param min the smallest value in the view
+   * @return a view of the values from min on
+   */
+  public RangeView tailSet(Comparable<T> min) {
+    return new RangeView(min, null);
+  }
+
+  /**
+   * A read-only view of the values of this tree within a fixed range. Each view carries its own
+   * bounds, so any number of views of the same tree can be iterated at the same time.
+   */
+  public class RangeView implements Iterable<T> {
+
+    // the smallest value in this view, or null for no minimum
+    private final Comparable<T> min;
+    // the largest value in this view, or null for no maximum
+    private final Comparable<T> max;
+
+    private RangeView(Comparable<T> min, Comparable<T> max) {
+      this.min = min;
+      this.max = max;
+    }
+
+    /**
+     * Returns an iterator over the values in this view in ascending order.
+     */
+    @Override
+    public Iterator<T> iterator() {
+      return IterableRedBlackTree.this.iterator(min, max);
+    }
+
+    /**
+     * Counts the values in this view, including duplicates, in O(log n) time.
+     * 
+     * @return the number of values in this view
+     */
+    public int size() {
+      return countInRange(min, max);
+    }
+
+    /**
+     * Checks if this view holds no values.
+     * 
+     * @return true if no values of the tree fall inside this view's range
+     */
+    public boolean isEmpty() {
+      return size() == 0;
+    }
+
+    /**
+     * Checks whether data is inside this view's range and stored in the tree.
+     * 
+     * @param data the value to look for
+     * @return true if the view contains data one or more times, and false otherwise
+     */
+    public boolean contains(Comparable<T> data) {
+      BinaryTreeNode<T> node = root;
+      while (node != null) {
+        int compare = data.compareTo(node.getData());
+        if (compare == 0) {
+          // values equal to data are either all inside the range or all outside of it
+          return (min == null || min.compareTo(node.getData()) <= 0)
+              && (max == null || max.compareTo(node.getData()) >= 0);
+        }
+        node = (compare < 0) ? node.childLeft() : node.childRight();
+      }
+      return false;
+    }
   }
 
   /**
    * Nested class for Iterator objects created for this tree and returned by the iterator method.
    * This iterator follows an in-order traversal of the tree and returns the values in sorted,
-   * ascending order.
+   * ascending order. It only ever holds the nodes on one root-to-leaf path, so its memory use is
+   * bounded by the height of the tree.
    */
   protected static class RBTIterator<R> implements Iterator<R> {
 
@@ -59,7 +479,7 @@ public class IterableRedBlackTree<T extends Comparable<T>> extends RedBlackTree<
     // stores the stop point (maximum) for the iterator
     Comparable<R> max = null;
     // stores the stack that keeps track of the inorder traversal
-    Stack<BinaryTreeNode<R>> stack = null;
+    ArrayDeque<BinaryTreeNode<R>> stack = null;
 
     /**
      * Constructor for a new iterator if the tree with root as its root node, and min as the start
@@ -73,6 +493,8 @@ public class IterableRedBlackTree<T extends Comparable<T>> extends RedBlackTree<
     public RBTIterator(BinaryTreeNode<R> root, Comparable<R> min, Comparable<R> max) {
       this.min = min;
       this.max = max;
+      this.stack = new ArrayDeque<>();
+      buildStackHelper(root);
     }
 
     /**
@@ -80,18 +502,79 @@ public class IterableRedBlackTree<T extends Comparable<T>> extends RedBlackTree<
      * value stored in the tree (or subtree) that is between start(minimum) and stop(maximum) point
      * (including start and stop points themselves), and - builds up the stack of ancestor nodes
      * that contain values between start(minimum) and stop(maximum) values (including start and stop
-     * values themselves) so that those nodes can be visited in the future.
+     * values themselves) so that those nodes can be visited in the future. Subtrees that lie
+     * entirely below the minimum are skipped without being visited, so the first call seeks
+     * straight to the first value in range in O(log n) time.
      * 
      * @param node the root node of the subtree to process
      */
     private void buildStackHelper(BinaryTreeNode<R> node) {
+      while (node != null) {
+        if (min != null && min.compareTo(node.getData()) > 0) {
+          // node and its whole left subtree are below the minimum
+          node = node.childRight();
+        } else {
+          stack.push(node);
+          node = node.childLeft();
+        }
+      }
     }
 
     /**
      * Returns true if the iterator has another value to return, and false otherwise.
      */
     public boolean hasNext() {
-      return false;
+      // the stack is in ascending order from the top, so once the top passes the maximum every
+      // remaining value does too
+      return !stack.isEmpty() && (max == null || max.compareTo(stack.peek().getData()) >= 0);
+    }
+
+    /**
+     * Returns the next value of the iterator.
+     * 
+     * @throws NoSuchElementException if the iterator has no more values to return
+     */
+    public R next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more values in range.");
+      }
+      BinaryTreeNode<R> node = stack.pop();
+      // the values right after node are the smallest ones in its right subtree
+      buildStackHelper(node.childRight());
+      return node.getData();
+    }
+
+  }
+
+  /**
+   * Nested class for Iterator objects that return the values of this tree in descending order,
+   * stopping below an optional minimum. Each step moves to the in-order predecessor of the current
+   * node by following child and parent references.
+   */
+  protected static class DescendingRBTIterator<R> implements Iterator<R> {
+
+    // the node holding the next value to return, or null when there are no more values
+    private BinaryTreeNode<R> next;
+    // stores the stop point (minimum) for the iterator
+    private final Comparable<R> min;
+
+    /**
+     * Creates an iterator that starts at the value in start and stops before the first value that
+     * is smaller than min.
+     * 
+     * @param start the node holding the first value to return, or null for no values
+     * @param min   the minimum value that the iterator will return, or null for no minimum
+     */
+    public DescendingRBTIterator(BinaryTreeNode<R> start, Comparable<R> min) {
+      this.next = start;
+      this.min = min;
+    }
+
+    /**
+     * Returns true if the iterator has another value to return, and false otherwise.
+     */
+    public boolean hasNext() {
+      return next != null && (min == null || min.compareTo(next.getData()) <= 0);
     }
 
     /**
@@ -100,9 +583,347 @@ public class IterableRedBlackTree<T extends Comparable<T>> extends RedBlackTree<
      * @throws NoSuchElementException if the iterator has no more values to return
      */
     public R next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more values in range.");
+      }
+      BinaryTreeNode<R> current = next;
+      if (current.childLeft() != null) {
+        // the predecessor is the largest value in the left subtree
+        next = current.childLeft();
+        while (next.childRight() != null) {
+          next = next.childRight();
+        }
+      } else {
+        // the predecessor is the closest ancestor that has current in its right subtree
+        next = current;
+        while (next.parent() != null && next.parent().childLeft() == next) {
+          next = next.parent();
+        }
+        next = next.parent();
+      }
+      return current.getData();
+    }
+
+  }
+
+  /**
+   * Nested class for Spliterator objects created for this tree. A spliterator covers the values at
+   * positions start (inclusive) to end (exclusive) of the tree's sorted order, so its size is
+   * always known exactly. Splitting finds the highest node whose position lies strictly inside the
+   * range and hands everything before that node to a new spliterator. Traversal works like
+   * RBTIterator, with a stack that holds at most one root-to-leaf path.
+   */
+  protected static class RBTSpliterator<R> implements Spliterator<R> {
+
+    // root node of the tree to traverse
+    private final BinaryTreeNode<R> root;
+    // position of the next value to return
+    private int start;
+    // position just past the last value to return
+    private final int end;
+    // in-order traversal stack, created when the first value is requested
+    private ArrayDeque<BinaryTreeNode<R>> stack = null;
+
+    /**
+     * Creates a spliterator over the values at positions start to end - 1 of the tree with the
+     * given root.
+     * 
+     * @param root  root node of the tree to traverse
+     * @param start position of the first value to return
+     * @param end   position just past the last value to return
+     */
+    public RBTSpliterator(BinaryTreeNode<R> root, int start, int end) {
+      this.root = root;
+      this.start = start;
+      this.end = end;
+    }
+
+    /**
+     * Builds the traversal stack so that its top holds the value at position start: the path from
+     * the root down to that node is followed using subtree sizes, and every node on it that comes
+     * at or after start in sorted order is pushed.
+     */
+    private void seek() {
+      stack = new ArrayDeque<>();
+      BinaryTreeNode<R> node = root;
+      int offset = 0;
+      while (node != null) {
+        int position = offset + BinaryTreeNode.sizeOf(node.childLeft());
+        if (start <= position) {
+          stack.push(node);
+          node = node.childLeft();
+        } else {
+          offset = position + 1;
+          node = node.childRight();
+        }
+      }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+      if (start >= end) {
+        return false;
+      }
+      if (stack == null) {
+        seek();
+      }
+
+      BinaryTreeNode<R> node = stack.pop();
+      for (BinaryTreeNode<R> next = node.childRight(); next != null; next = next.childLeft()) {
+        stack.push(next);
+      }
+      start++;
+      action.accept(node.getData());
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super R> action) {
+      while (tryAdvance(action)) {
+        // each call hands one value to action
+      }
+    }
+
+    @Override
+    public Spliterator<R> trySplit() {
+      // find the highest node whose position lies strictly after start and before end
+      BinaryTreeNode<R> node = root;
+      int offset = 0;
+      while (node != null) {
+        int position = offset + BinaryTreeNode.sizeOf(node.childLeft());
+        if (position <= start) {
+          offset = position + 1;
+          node = node.childRight();
+        } else if (position >= end) {
+          node = node.childLeft();
+        } else {
+          // the values before that node go to the new spliterator, and this one restarts there
+          RBTSpliterator<R> prefix = new RBTSpliterator<>(root, start, position);
+          start = position;
+          stack = null;
+          return prefix;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+      return Math.max(0, end - start);
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | SORTED | SIZED | SUBSIZED | NONNULL;
+    }
+
+    /**
+     * Returns null, since the values are sorted in their natural order.
+     */
+    @Override
+    public Comparator<? super R> getComparator() {
       return null;
     }
 
   }
 
+  /**
+   * Collects every value returned by iterator into a list. The tests of the other collections in
+   * this package use it too.
+   */
+  static <R> List<R> drain(Iterator<R> iterator) {
+    List<R> values = new ArrayList<>();
+    while (iterator.hasNext()) {
+      values.add(iterator.next());
+    }
+    return values;
+  }
+
+  /**
+   * Tests iterating over the whole tree, over an empty tree, and past the last value.
+   */
+  @Test
+  public void IteratorTest1() {
+    IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<>();
+    assertFalse(tree.iterator().hasNext());
+    assertThrows(NoSuchElementException.class, () -> tree.iterator().next());
+
+    for (int i = 0; i < 200; i++) {
+      tree.insert((i * 67) % 100);
+    }
+    List<Integer> values = drain(tree.iterator());
+    assertTrue(values.size() == 200);
+    for (int i = 0; i < 200; i++) {
+      assertTrue(values.get(i) == i / 2);
+    }
+  }
+
+  /**
+   * Tests iterating with a minimum, a maximum and both, including bounds that fall between stored
+   * values, bounds equal to duplicated values and ranges that hold no values.
+   */
+  @Test
+  public void IteratorTest2() {
+    IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<>();
+    for (int i = 0; i < 100; i += 2) {
+      tree.insert(i);
+      tree.insert(i);
+    }
+
+    tree.setIteratorMin(50);
+    List<Integer> values = drain(tree.iterator());
+    assertTrue(values.size() == 50 && values.get(0) == 50 && values.get(49) == 98);
+
+    tree.setIteratorMax(61);
+    values = drain(tree.iterator());
+    assertTrue(values.size() == 12 && values.get(0) == 50 && values.get(11) == 60);
+
+    tree.setIteratorMin(null);
+    values = drain(tree.iterator());
+    assertTrue(values.size() == 62 && values.get(0) == 0 && values.get(61) == 60);
+
+    tree.setIteratorMin(51);
+    tree.setIteratorMax(51);
+    assertFalse(tree.iterator().hasNext());
+    tree.setIteratorMin(70);
+    tree.setIteratorMax(30);
+    assertFalse(tree.iterator().hasNext());
+  }
+
+  /**
+   * Tests that iterators created with their own bounds are independent of each other and of the
+   * bounds set with setIteratorMin and setIteratorMax, even when they are advanced in turns.
+   */
+  @Test
+  public void IteratorTest3() {
+    IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<>();
+    for (int i = 0; i < 100; i++) {
+      tree.insert(i);
+    }
+    tree.setIteratorMin(90);
+
+    Iterator<Integer> low = tree.iterator(10, 19);
+    Iterator<Integer> high = tree.iterator(80, null);
+    Iterator<Integer> all = tree.iterator(null, null);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(low.next() == 10 + i && high.next() == 80 + i && all.next() == i);
+    }
+    assertFalse(low.hasNext());
+    assertTrue(high.next() == 90);
+    assertTrue(drain(tree.iterator()).size() == 10);
+  }
+
+  /**
+   * Tests the subSet, headSet and tailSet views: their contents, sizes and contains, and that they
+   * reflect values inserted after they were created.
+   */
+  @Test
+  public void IteratorTest4() {
+    IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<>();
+    for (int i = 0; i < 50; i++) {
+      tree.insert(i * 2);
+    }
+
+    IterableRedBlackTree<Integer>.RangeView middle = tree.subSet(21, 40);
+    IterableRedBlackTree<Integer>.RangeView head = tree.headSet(9);
+    IterableRedBlackTree<Integer>.RangeView tail = tree.tailSet(90);
+    assertTrue(middle.size() == 10 && head.size() == 5 && tail.size() == 5);
+    assertTrue(middle.contains(22) && middle.contains(40) && !middle.contains(20));
+    assertTrue(!middle.contains(23) && !head.contains(10) && tail.contains(98));
+
+    int expected = 22;
+    for (int value : middle) {
+      assertTrue(value == expected);
+      expected += 2;
+    }
+    assertTrue(expected == 42);
+
+    tree.insert(23);
+    assertTrue(middle.size() == 11 && middle.contains(23));
+    assertTrue(tree.subSet(41, 41).isEmpty() && !tree.subSet(40, 40).isEmpty());
+  }
+
+  /**
+   * Tests that sequential and parallel streams return every value in the range exactly once and in
+   * order, and that the spliterator reports exact sizes before and after splitting.
+   */
+  @Test
+  public void IteratorTest5() {
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      values.add(i / 2);
+    }
+    IterableRedBlackTree<Integer> tree = IterableRedBlackTree.buildFrom(values);
+
+    assertTrue(tree.stream().collect(Collectors.toList()).equals(values));
+    assertTrue(tree.stream().parallel().collect(Collectors.toList()).equals(values));
+    assertTrue(tree.stream(1000, 1999).parallel().count() == 2000);
+    assertTrue(tree.stream(1000, 1999).mapToLong(i -> i).sum() == 2 * 1499500L);
+    assertTrue(tree.stream(70000, null).count() == 0 && tree.stream(-5, -1).count() == 0);
+
+    tree.setIteratorMax(9);
+    assertTrue(tree.stream().count() == 20);
+
+    Spliterator<Integer> suffix = tree.spliterator(100, 199);
+    assertTrue(suffix.estimateSize() == 200 && suffix.hasCharacteristics(Spliterator.SIZED));
+    Spliterator<Integer> prefix = suffix.trySplit();
+    assertTrue(prefix.estimateSize() + suffix.estimateSize() == 200);
+    List<Integer> seen = new ArrayList<>();
+    prefix.forEachRemaining(seen::add);
+    suffix.forEachRemaining(seen::add);
+    assertTrue(seen.equals(values.subList(200, 400)));
+  }
+
+  /**
+   * Tests floor, ceiling, higher, lower, first, last, pollFirst and pollLast, including keys below,
+   * above, between and equal to the stored values.
+   */
+  @Test
+  public void IteratorTest6() {
+    IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<>();
+    assertTrue(tree.floor(5) == null && tree.pollFirst() == null && tree.pollLast() == null);
+    assertThrows(NoSuchElementException.class, () -> tree.first());
+    assertThrows(NoSuchElementException.class, () -> tree.last());
+
+    for (int i = 10; i <= 100; i += 10) {
+      tree.insert(i);
+    }
+    tree.insert(50);
+
+    assertTrue(tree.floor(55) == 50 && tree.floor(50) == 50 && tree.floor(5) == null);
+    assertTrue(tree.ceiling(55) == 60 && tree.ceiling(50) == 50 && tree.ceiling(105) == null);
+    assertTrue(tree.higher(50) == 60 && tree.higher(45) == 50 && tree.higher(100) == null);
+    assertTrue(tree.lower(50) == 40 && tree.lower(55) == 50 && tree.lower(10) == null);
+    assertTrue(tree.first() == 10 && tree.last() == 100);
+
+    assertTrue(tree.pollFirst() == 10 && tree.pollLast() == 100 && tree.size() == 9);
+    assertTrue(tree.first() == 20 && tree.last() == 90 && tree.satisfiesRedBlackProperties());
+  }
+
+  /**
+   * Tests descending iteration over the whole tree and over ranges whose bounds fall on, between
+   * and outside of the stored values.
+   */
+  @Test
+  public void IteratorTest7() {
+    IterableRedBlackTree<Integer> tree = new IterableRedBlackTree<>();
+    assertFalse(tree.descendingIterator().hasNext());
+    for (int i = 0; i < 300; i++) {
+      tree.insert((i * 7) % 300);
+    }
+
+    List<Integer> values = drain(tree.descendingIterator());
+    assertTrue(values.size() == 300 && values.get(0) == 299 && values.get(299) == 0);
+    for (int i = 1; i < values.size(); i++) {
+      assertTrue(values.get(i - 1) == values.get(i) + 1);
+    }
+
+    values = drain(tree.descendingIterator(100, 199));
+    assertTrue(values.size() == 100 && values.get(0) == 199 && values.get(99) == 100);
+    values = drain(tree.descendingIterator(250, null));
+    assertTrue(values.size() == 50 && values.get(0) == 299);
+    assertFalse(tree.descendingIterator(400, null).hasNext());
+    assertFalse(tree.descendingIterator(null, -1).hasNext());
+    assertThrows(NoSuchElementException.class, () -> tree.descendingIterator(5, 4).next());
+  }
 }
@@ -1,3 +1,5 @@
+import java.util.Iterator;
+
 /**
  * This interface defines an ADT for data structures that support storing a collection of comparable
  * values in their natural ordering (similar to the SortedCollection interface), and that are also
@@ -10,5 +12,16 @@ public interface IterableSortedCollection<T extends Comparable<T>>
 
   public void setIteratorMax(Comparable<T> max); // null to clear max
 
+  /**
+   * Returns an iterator over the values between min and max, including min and max themselves, in
+   * ascending order. A null min or max leaves that end of the range unbounded. The bounds belong to
+   * the returned iterator alone: they are not affected by setIteratorMin and setIteratorMax, so
+   * readers that scan different ranges of the same collection do not interfere with each other.
+   * 
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return an iterator over the values in that range
+   */
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max);
 
 }
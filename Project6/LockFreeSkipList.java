@@ -0,0 +1,356 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class represents a sorted collection stored in a skip list that any number of threads can
+ * insert into and read from at the same time without locking. Every link is updated with a single
+ * compare-and-set, so a thread that is delayed in the middle of an insert never blocks the others.
+ * Like BinarySearchTree, duplicate values are allowed, and a new value is placed in front of the
+ * values that are equal to it. Values are never removed individually, which keeps every link
+ * update a plain compare-and-set without any need to mark nodes as deleted.
+ */
+public class LockFreeSkipList<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+  // number of levels in the list; with a promotion probability of 1/2 this is enough for any
+  // collection whose size fits in an int
+  private static final int MAX_LEVEL = 32;
+
+  /**
+   * A node of the skip list. Its value never changes, and next holds one link per level the node
+   * appears on, with level 0 linking every node of the list in order.
+   */
+  private static final class Node<T> {
+    private final T data;
+    private final AtomicReferenceArray<Node<T>> next;
+
+    private Node(T data, int levels) {
+      this.data = data;
+      this.next = new AtomicReferenceArray<>(levels);
+    }
+  }
+
+  /**
+   * The head sentinel together with the number of values linked after it. clear() replaces the
+   * whole object at once, so an insert running at the same time as clear() either lands in the
+   * contents that are being discarded or in the new empty ones, but never leaves the size and
+   * the links out of step with each other.
+   */
+  private static final class Contents<T> {
+    private final Node<T> head = new Node<>(null, MAX_LEVEL);
+    private final LongAdder size = new LongAdder();
+  }
+
+  private volatile Contents<T> contents = new Contents<>();
+
+  private volatile Comparable<T> maximum = null;
+  private volatile Comparable<T> minimum = null;
+
+  /**
+   * Inserts a new data value into the list. The value is first linked into level 0, which is the
+   * point where it becomes visible to every reader, and is then linked into the levels above one
+   * at a time. A compare-and-set that fails because another thread changed the same link is
+   * retried after searching for the new position again.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException if data argument is null, we do not allow null values to be stored
+   *                              within a SortedCollection
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+    Contents<T> current = this.contents;
+    int levels = randomLevels();
+    Node<T> node = new Node<>(data, levels);
+    @SuppressWarnings("unchecked")
+    Node<T>[] preds = (Node<T>[]) new Node<?>[MAX_LEVEL];
+    @SuppressWarnings("unchecked")
+    Node<T>[] succs = (Node<T>[]) new Node<?>[MAX_LEVEL];
+
+    do {
+      find(current.head, data, preds, succs);
+      for (int level = 0; level < levels; level++) {
+        node.next.set(level, succs[level]);
+      }
+    } while (!preds[0].next.compareAndSet(0, succs[0], node));
+    current.size.increment();
+
+    for (int level = 1; level < levels; level++) {
+      while (!preds[level].next.compareAndSet(level, succs[level], node)) {
+        find(current.head, data, preds, succs);
+        node.next.set(level, succs[level]);
+      }
+    }
+  }
+
+  /**
+   * Returns how many levels a new node appears on: one level, plus one more for each time a fair
+   * coin comes up heads in a row.
+   */
+  private static int randomLevels() {
+    return 1 + Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt() | 1 << 31);
+  }
+
+  /**
+   * Fills preds and succs with, on every level, the last node holding a value smaller than key
+   * and the node that follows it.
+   */
+  private static <T> void find(Node<T> head, Comparable<T> key, Node<T>[] preds,
+      Node<T>[] succs) {
+    Node<T> pred = head;
+    for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+      Node<T> curr = pred.next.get(level);
+      while (curr != null && key.compareTo(curr.data) > 0) {
+        pred = curr;
+        curr = pred.next.get(level);
+      }
+      preds[level] = pred;
+      succs[level] = curr;
+    }
+  }
+
+  /**
+   * Returns the first node at level 0 whose value is greater than or equal to key, or the first
+   * node of the list when key is null.
+   */
+  private static <T> Node<T> ceilingNode(Node<T> head, Comparable<T> key) {
+    if (key == null) {
+      return head.next.get(0);
+    }
+    Node<T> pred = head;
+    for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+      Node<T> curr = pred.next.get(level);
+      while (curr != null && key.compareTo(curr.data) > 0) {
+        pred = curr;
+        curr = pred.next.get(level);
+      }
+    }
+    return pred.next.get(0);
+  }
+
+  /**
+   * Check whether data is stored in the list.
+   *
+   * @param data the value to check for in the collection
+   * @return true if the collection contains data one or more times, and false otherwise
+   */
+  @Override
+  public boolean contains(Comparable<T> data) {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+    Node<T> node = ceilingNode(this.contents.head, data);
+    return node != null && data.compareTo(node.data) == 0;
+  }
+
+  /**
+   * Counts the number of values in the list, with each duplicate value being counted separately
+   * within the value returned. While inserts are running the result is only an estimate that may
+   * be missing some of them.
+   *
+   * @return the number of values in the collection, including duplicates
+   */
+  @Override
+  public int size() {
+    return (int) this.contents.size.sum();
+  }
+
+  /**
+   * Checks if the collection is empty.
+   *
+   * @return true if the collection contains 0 values, false otherwise
+   */
+  @Override
+  public boolean isEmpty() {
+    return this.contents.head.next.get(0) == null;
+  }
+
+  /**
+   * Removes all values and duplicates from the collection. Iterators created before this call
+   * keep walking the values that were removed.
+   */
+  @Override
+  public void clear() {
+    this.contents = new Contents<>();
+  }
+
+  /**
+   * Allows setting the start (minimum) value of the iterator. When this method is called, every
+   * iterator created after it will use the minimum set by this method until this method is called
+   * again to set a new minimum value.
+   *
+   * @param min the minimum for iterators created for this list, or null for no minimum
+   */
+  @Override
+  public void setIteratorMin(Comparable<T> min) {
+    this.minimum = min;
+  }
+
+  /**
+   * Allows setting the stop (maximum) value of the iterator. When this method is called, every
+   * iterator created after it will use the maximum set by this method until this method is called
+   * again to set a new maximum value.
+   *
+   * @param max the maximum for iterators created for this list, or null for no maximum
+   */
+  @Override
+  public void setIteratorMax(Comparable<T> max) {
+    this.maximum = max;
+  }
+
+  /**
+   * Returns an iterator over the values in the list, using the minimum and maximum set by
+   * setIteratorMin and setIteratorMax.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(this.minimum, this.maximum);
+  }
+
+  /**
+   * Returns a weakly consistent iterator over the values between min and max (inclusive). A null
+   * min or max leaves that end of the range unbounded. The iterator never throws because of
+   * concurrent inserts and returns values in sorted order; a value inserted while it runs is
+   * returned if and only if it is linked in ahead of the iterator's current position.
+   *
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return an iterator over the values in that range
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    return new SkipListIterator<>(ceilingNode(this.contents.head, min), max);
+  }
+
+  /**
+   * Nested class for the iterators of a LockFreeSkipList, which walk level 0 of the list.
+   */
+  private static class SkipListIterator<R> implements Iterator<R> {
+
+    // stores the stop point (maximum) for the iterator
+    private final Comparable<R> max;
+    // the node whose value next() returns, or null at the end of the list
+    private Node<R> nextNode;
+
+    private SkipListIterator(Node<R> start, Comparable<R> max) {
+      this.nextNode = start;
+      this.max = max;
+    }
+
+    /**
+     * Returns true if the iterator has another value to return, and false otherwise.
+     */
+    public boolean hasNext() {
+      return nextNode != null && (max == null || max.compareTo(nextNode.data) >= 0);
+    }
+
+    /**
+     * Returns the next value of the iterator.
+     *
+     * @throws NoSuchElementException if the iterator has no more values to return
+     */
+    public R next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more values in range.");
+      }
+      R data = nextNode.data;
+      nextNode = nextNode.next.get(0);
+      return data;
+    }
+
+  }
+
+  /**
+   * Tests the shape of the list: every level is sorted and holds a subset of the nodes on the
+   * level below it, about half of the nodes reach level 1, and a new value is linked in front of
+   * the values equal to it. Also tests that an iterator created before clear() keeps walking the
+   * discarded contents.
+   */
+  @Test
+  public void Test1() {
+    LockFreeSkipList<Integer> list = new LockFreeSkipList<>();
+    for (int i = 0; i < 1000; i++) {
+      list.insert((i * 389) % 500);
+    }
+    Node<Integer> head = list.contents.head;
+    List<Node<Integer>> below = null;
+    for (int level = 0; level < MAX_LEVEL; level++) {
+      List<Node<Integer>> nodes = new ArrayList<>();
+      for (Node<Integer> node = head.next.get(level); node != null; node = node.next.get(level)) {
+        assertTrue(node.next.length() > level);
+        assertTrue(nodes.isEmpty() || nodes.get(nodes.size() - 1).data <= node.data);
+        nodes.add(node);
+      }
+      if (below != null) {
+        assertTrue(below.containsAll(nodes));
+      }
+      if (level == 0) {
+        assertTrue(nodes.size() == 1000);
+      } else if (level == 1) {
+        assertTrue(nodes.size() > 400 && nodes.size() < 600);
+      }
+      below = nodes;
+    }
+
+    // 1000 is outside the Integer cache, so these are two different objects
+    Integer older = Integer.valueOf(1000);
+    Integer newer = Integer.valueOf(1000);
+    list.insert(older);
+    list.insert(newer);
+    assertTrue(ceilingNode(head, 1000).data == newer);
+    assertTrue(ceilingNode(head, 1000).next.get(0).data == older);
+
+    Iterator<Integer> before = list.iterator(499, null);
+    list.clear();
+    list.insert(7);
+    assertTrue(list.size() == 1 && !list.contains(499) && list.contains(7));
+    assertEquals(List.of(499, 499, 1000, 1000), IterableRedBlackTree.drain(before));
+  }
+
+  /**
+   * Tests that values inserted from several threads at once all end up in the list in order, and
+   * that an iterator running alongside the inserts stays sorted.
+   */
+  @Test
+  public void Test2() throws InterruptedException {
+    LockFreeSkipList<Integer> list = new LockFreeSkipList<>();
+    int threads = 4;
+    int perThread = 20000;
+    List<Thread> writers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      int offset = t;
+      writers.add(new Thread(() -> {
+        for (int i = 0; i < perThread; i++) {
+          // every value is inserted twice, by two different threads
+          list.insert((i * threads + offset) / 2);
+        }
+      }));
+    }
+    writers.forEach(Thread::start);
+    Iterator<Integer> running = list.iterator();
+    int previous = Integer.MIN_VALUE;
+    while (running.hasNext()) {
+      int value = running.next();
+      assertTrue(value >= previous);
+      previous = value;
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+
+    assertTrue(list.size() == threads * perThread);
+    Iterator<Integer> iterator = list.iterator();
+    for (int i = 0; i < threads * perThread; i++) {
+      assertTrue(iterator.next() == i / 2);
+    }
+    assertFalse(iterator.hasNext());
+  }
+}
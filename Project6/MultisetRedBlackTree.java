@@ -0,0 +1,749 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * This class extends IterableRedBlackTree into a tree that keeps all values that compare equal to
+ * each other in a single node, instead of one node per value. A value that is also equal (by
+ * equals) to the first value in its node only increases that node's count; other values that
+ * compare equal to it are kept in a small array in the node. The tree therefore has one node per
+ * distinct key, which keeps it shallow when there are many duplicates, while size(), select(),
+ * rank() and iteration still count and return every value.
+ *
+ * removeRange, split, intersection and difference move whole nodes, so they work unchanged. union
+ * and join merge nodes with equal keys from both trees, and a multiset tree can only be joined
+ * with another multiset tree. The static bulk building methods of RedBlackTree create one node per
+ * value and do not produce multiset trees.
+ */
+public class MultisetRedBlackTree<T extends Comparable<T>> extends IterableRedBlackTree<T> {
+
+  /**
+   * A node of a MultisetRedBlackTree, standing for copies values equal to data followed by the
+   * values in others, all of which compare equal to data.
+   */
+  protected static class MultisetNode<T> extends RBTNode<T> {
+
+    // number of values in this node that are equal to data
+    protected int copies = 1;
+    // values that compare equal to data without being equal to it, in insertion order
+    protected Object[] others = null;
+    protected int otherCount = 0;
+
+    /**
+     * Creates a node holding a single value.
+     *
+     * @param data the value the new node stores
+     */
+    public MultisetNode(T data) {
+      super(data);
+    }
+
+    /**
+     * @return the number of values held by this node
+     */
+    @Override
+    public int multiplicity() {
+      return copies + otherCount;
+    }
+
+    /**
+     * Adds value, which compares equal to the values already in this node. The caller must update
+     * the subtree sizes of this node and its ancestors.
+     */
+    protected void add(T value) {
+      if (value.equals(data)) {
+        copies++;
+        return;
+      }
+      if (others == null) {
+        others = new Object[2];
+      } else if (otherCount == others.length) {
+        others = Arrays.copyOf(others, 2 * otherCount);
+      }
+      others[otherCount++] = value;
+    }
+
+    /**
+     * Returns the value at position index among the values of this node, in iteration order.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T valueAt(int index) {
+      return (index < copies) ? data : (T) others[index - copies];
+    }
+
+    /**
+     * Removes and returns the first value of this node, which must hold at least two values. The
+     * caller must update the subtree sizes of this node and its ancestors.
+     */
+    @SuppressWarnings("unchecked")
+    protected T removeFirstValue() {
+      T first = data;
+      if (copies > 1) {
+        copies--;
+      } else {
+        data = (T) others[0];
+        System.arraycopy(others, 1, others, 0, --otherCount);
+        others[otherCount] = null;
+      }
+      return first;
+    }
+
+    /**
+     * Removes and returns the last value of this node, which must hold at least two values. The
+     * caller must update the subtree sizes of this node and its ancestors.
+     */
+    @SuppressWarnings("unchecked")
+    protected T removeLastValue() {
+      if (otherCount == 0) {
+        copies--;
+        return data;
+      }
+      T last = (T) others[--otherCount];
+      others[otherCount] = null;
+      return last;
+    }
+
+    /**
+     * Removes and returns a value of this node that is equal (by equals) to value, or the last
+     * value of this node if none is. The node must hold at least two values. The caller must update
+     * the subtree sizes of this node and its ancestors.
+     */
+    @SuppressWarnings("unchecked")
+    protected T removeValue(Object value) {
+      if (value.equals(data)) {
+        return removeFirstValue();
+      }
+      for (int i = otherCount - 1; i >= 0; i--) {
+        if (value.equals(others[i])) {
+          T removed = (T) others[i];
+          System.arraycopy(others, i + 1, others, i, --otherCount - i);
+          others[otherCount] = null;
+          return removed;
+        }
+      }
+      return removeLastValue();
+    }
+  }
+
+  /**
+   * Creates multiset nodes, so that insert can add duplicates to them.
+   */
+  @Override
+  protected RBTNode<T> createNode(T data) {
+    return new MultisetNode<>(data);
+  }
+
+  /**
+   * @return true, since this tree keeps the values with equal keys in one node
+   */
+  @Override
+  protected boolean groupsEqualKeys() {
+    return true;
+  }
+
+  /**
+   * Creates a new, empty multiset tree.
+   */
+  @Override
+  protected MultisetRedBlackTree<T> createEmpty() {
+    return new MultisetRedBlackTree<>();
+  }
+
+  /**
+   * Inserts a new data value into the tree. If the tree already has a node for values equal to
+   * data, data is added to that node and the tree's shape does not change; otherwise a new node
+   * is inserted and the red-black properties are restored as usual.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException if data argument is null, we do not allow null values to be stored
+   *                              within a SortedCollection
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+    MultisetNode<T> node = findNode(data);
+    if (node == null) {
+      super.insert(data);
+      return;
+    }
+    node.add(data);
+    for (BinaryTreeNode<T> ancestor = node; ancestor != null; ancestor = ancestor.parent()) {
+      ancestor.size++;
+    }
+  }
+
+  /**
+   * Inserts every value in data into this tree, one at a time, since the bulk building done by
+   * RedBlackTree creates a separate node for every value.
+   *
+   * @param data the values being inserted
+   * @throws NullPointerException if data or any of its values is null
+   */
+  @Override
+  public void insertAll(Collection<? extends T> data) throws NullPointerException {
+    for (T value : data) {
+      insert(value);
+    }
+  }
+
+  /**
+   * @return the node holding the values equal to key, or null if there is none
+   */
+  private MultisetNode<T> findNode(Comparable<T> key) {
+    BinaryTreeNode<T> node = root;
+    while (node != null) {
+      int compare = key.compareTo(node.getData());
+      if (compare == 0) {
+        return (MultisetNode<T>) node;
+      }
+      node = (compare < 0) ? node.childLeft() : node.childRight();
+    }
+    return null;
+  }
+
+  /**
+   * Subtracts one from the subtree size of node and of each of its ancestors.
+   */
+  private static void decrementSizes(BinaryTreeNode<?> node) {
+    addToSizes(node, -1);
+  }
+
+  /**
+   * Adds delta to the subtree size of node and of each of its ancestors.
+   */
+  private static void addToSizes(BinaryTreeNode<?> node, int delta) {
+    for (; node != null; node = node.parent()) {
+      node.size += delta;
+    }
+  }
+
+  /**
+   * Removes one value that compares equal to data from this tree. A value that is also equal (by
+   * equals) to data is removed if the node holds one; otherwise the last value of the node is. The
+   * node is only unlinked when it holds no other values.
+   *
+   * @param data the value to remove
+   * @return true if a value equal to data was found and removed, false otherwise
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public boolean remove(Comparable<T> data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+    MultisetNode<T> node = findNode(data);
+    if (node == null) {
+      return false;
+    }
+    if (node.multiplicity() > 1) {
+      node.removeValue(data);
+      decrementSizes(node);
+    } else {
+      removeNode(node);
+    }
+    return true;
+  }
+
+  /**
+   * Removes and returns the smallest value in this tree.
+   *
+   * @return the value that was removed
+   * @throws NoSuchElementException if the tree is empty
+   */
+  @Override
+  public T removeFirst() throws NoSuchElementException {
+    if (root == null) {
+      throw new NoSuchElementException("Tree is empty.");
+    }
+    BinaryTreeNode<T> first = root;
+    while (first.childLeft() != null) {
+      first = first.childLeft();
+    }
+    MultisetNode<T> node = (MultisetNode<T>) first;
+    if (node.multiplicity() == 1) {
+      T data = node.getData();
+      removeNode(node);
+      return data;
+    }
+    T data = node.removeFirstValue();
+    decrementSizes(node);
+    return data;
+  }
+
+  /**
+   * Removes and returns the largest value in this tree.
+   *
+   * @return the value that was removed
+   * @throws NoSuchElementException if the tree is empty
+   */
+  @Override
+  public T removeLast() throws NoSuchElementException {
+    if (root == null) {
+      throw new NoSuchElementException("Tree is empty.");
+    }
+    BinaryTreeNode<T> last = root;
+    while (last.childRight() != null) {
+      last = last.childRight();
+    }
+    MultisetNode<T> node = (MultisetNode<T>) last;
+    if (node.multiplicity() == 1) {
+      T data = node.getData();
+      removeNode(node);
+      return data;
+    }
+    T data = node.removeLastValue();
+    decrementSizes(node);
+    return data;
+  }
+
+  /**
+   * Returns an iterator over the values between min and max (inclusive), in ascending order and
+   * including every duplicate. A null min or max leaves that end of the range unbounded.
+   *
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return an iterator over the values in that range
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    BinaryTreeNode<T> start = null;
+    BinaryTreeNode<T> node = root;
+    while (node != null) {
+      if (min == null || min.compareTo(node.getData()) <= 0) {
+        start = node;
+        node = node.childLeft();
+      } else {
+        node = node.childRight();
+      }
+    }
+    return new MultisetIterator<>(start, max, false);
+  }
+
+  /**
+   * Returns an iterator over the values between min and max (inclusive), in descending order and
+   * including every duplicate. A null min or max leaves that end of the range unbounded.
+   *
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return an iterator over the values in that range, from largest to smallest
+   */
+  @Override
+  public Iterator<T> descendingIterator(Comparable<T> min, Comparable<T> max) {
+    BinaryTreeNode<T> start = null;
+    BinaryTreeNode<T> node = root;
+    while (node != null) {
+      if (max == null || max.compareTo(node.getData()) >= 0) {
+        start = node;
+        node = node.childRight();
+      } else {
+        node = node.childLeft();
+      }
+    }
+    return new MultisetIterator<>(start, min, true);
+  }
+
+  /**
+   * Returns a spliterator over the values between min and max (inclusive), backed by iterator. Its
+   * size is known exactly, but it does not split at subtree boundaries like the spliterators of
+   * IterableRedBlackTree, because a single node can hold many values.
+   *
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return a spliterator over the values in that range
+   */
+  @Override
+  public Spliterator<T> spliterator(Comparable<T> min, Comparable<T> max) {
+    return Spliterators.spliterator(iterator(min, max), countInRange(min, max),
+        Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL);
+  }
+
+  /**
+   * Moves every value greater than or equal to key into a new multiset tree, which is returned,
+   * and keeps every value smaller than key in this tree. See RedBlackTree.split.
+   *
+   * @param key the value to split at
+   * @return a new tree holding the values of this tree that are greater than or equal to key
+   * @throws NullPointerException if key is null
+   */
+  @Override
+  public MultisetRedBlackTree<T> split(Comparable<T> key) throws NullPointerException {
+    return (MultisetRedBlackTree<T>) super.split(key);
+  }
+
+  /**
+   * Creates a multiset tree holding every value of left, then pivot, then every value of right,
+   * and leaves left and right empty. See RedBlackTree.join.
+   *
+   * @param left  the tree with the smaller values
+   * @param pivot the value that goes between the two trees
+   * @param right the tree with the larger values
+   * @return a new tree holding all of the values
+   * @throws NullPointerException     if any argument is null
+   * @throws IllegalArgumentException if the values are not in order, or left and right are the same
+   *                                  non-empty tree
+   */
+  public static <T extends Comparable<T>> MultisetRedBlackTree<T> join(
+      MultisetRedBlackTree<T> left, T pivot, MultisetRedBlackTree<T> right)
+      throws NullPointerException, IllegalArgumentException {
+    return (MultisetRedBlackTree<T>) RedBlackTree.join(left, pivot, right);
+  }
+
+  /**
+   * Joins this tree and right around pivot, keeping one node per key. pivot is added to the
+   * largest node of this tree or the smallest node of right when it compares equal to it, and when
+   * those two nodes compare equal to each other, the values of right's node are moved into this
+   * tree's. If pivot was merged, a boundary node is taken out of its tree to serve as the pivot
+   * node instead, which keeps the join O(log n).
+   *
+   * @param pivot the value that goes between this tree and right
+   * @param right a multiset tree with the larger values
+   * @return a new multiset tree holding all of the values
+   */
+  @Override
+  protected RedBlackTree<T> joinWith(T pivot, RedBlackTree<T> right) {
+    MultisetRedBlackTree<T> other = (MultisetRedBlackTree<T>) right;
+    MultisetNode<T> last = extremeNode(this.root, false);
+    MultisetNode<T> first = extremeNode(other.root, true);
+
+    boolean merged = true;
+    if (last != null && pivot.compareTo(last.getData()) == 0) {
+      last.add(pivot);
+      addToSizes(last, 1);
+    } else if (first != null && pivot.compareTo(first.getData()) == 0) {
+      first.add(pivot);
+      addToSizes(first, 1);
+    } else {
+      merged = false;
+    }
+    if (last != null && first != null && last.getData().compareTo(first.getData()) == 0) {
+      for (int i = 0; i < first.multiplicity(); i++) {
+        last.add(first.valueAt(i));
+      }
+      addToSizes(last, first.multiplicity());
+      other.removeNode(first);
+    }
+
+    if (!merged) {
+      return joinAround(createNode(pivot), other);
+    }
+    MultisetNode<T> pivotNode = extremeNode(this.root, false);
+    if (pivotNode != null) {
+      removeNode(pivotNode);
+    } else {
+      pivotNode = extremeNode(other.root, true);
+      other.removeNode(pivotNode);
+    }
+    return joinAround(pivotNode, other);
+  }
+
+  /**
+   * @return the node with the smallest key (when smallest is true) or the largest key in the
+   *         subtree rooted at node, or null if node is null
+   */
+  private static <T> MultisetNode<T> extremeNode(BinaryTreeNode<T> node, boolean smallest) {
+    if (node == null) {
+      return null;
+    }
+    while ((smallest ? node.childLeft() : node.childRight()) != null) {
+      node = smallest ? node.childLeft() : node.childRight();
+    }
+    return (MultisetNode<T>) node;
+  }
+
+  /**
+   * Adds every value of other to this tree, keeping duplicates, and leaves other empty. The values
+   * of each node of other are added to this tree's node for their key in one step, or become a new
+   * node when this tree has none, so this takes O(m log n) time for m nodes in other. other may be
+   * any red-black tree; its nodes are not reused.
+   *
+   * @param other the tree whose values are moved into this one
+   * @throws NullPointerException     if other is null
+   * @throws IllegalArgumentException if other is this tree
+   */
+  @Override
+  public void union(RedBlackTree<T> other) throws NullPointerException, IllegalArgumentException {
+    if (other == null) {
+      throw new NullPointerException("Other tree is null.");
+    }
+    if (other == this) {
+      throw new IllegalArgumentException("Cannot combine a tree with itself.");
+    }
+
+    ArrayDeque<BinaryTreeNode<T>> stack = new ArrayDeque<>();
+    if (other.root != null) {
+      stack.push(other.root);
+    }
+    while (!stack.isEmpty()) {
+      BinaryTreeNode<T> node = stack.pop();
+      if (node.childLeft() != null) {
+        stack.push(node.childLeft());
+      }
+      if (node.childRight() != null) {
+        stack.push(node.childRight());
+      }
+
+      int start = 0;
+      MultisetNode<T> target = findNode(node.getData());
+      if (target == null) {
+        super.insert(node.valueAt(0));
+        target = findNode(node.getData());
+        start = 1;
+      }
+      for (int i = start; i < node.multiplicity(); i++) {
+        target.add(node.valueAt(i));
+      }
+      addToSizes(target, node.multiplicity() - start);
+    }
+    other.clear();
+  }
+
+  /**
+   * Nested class for the iterators of a MultisetRedBlackTree. It steps from node to node through
+   * child and parent references, in ascending or descending order, and returns every value held by
+   * each node before moving on.
+   */
+  protected static class MultisetIterator<R> implements Iterator<R> {
+
+    // the node holding the next value to return, or null when there are no more nodes
+    private BinaryTreeNode<R> node;
+    // position of the next value among the values of node, in iteration order
+    private int index = 0;
+    // the last value to return: the maximum when ascending, the minimum when descending
+    private final Comparable<R> bound;
+    private final boolean descending;
+
+    /**
+     * Creates an iterator that starts at the first value of start and stops at bound.
+     *
+     * @param start      the node holding the first values to return, or null for no values
+     * @param bound      the maximum (ascending) or minimum (descending) value to return, or null
+     * @param descending whether to return values from largest to smallest
+     */
+    public MultisetIterator(BinaryTreeNode<R> start, Comparable<R> bound, boolean descending) {
+      this.node = start;
+      this.bound = bound;
+      this.descending = descending;
+    }
+
+    /**
+     * Returns true if the iterator has another value to return, and false otherwise.
+     */
+    public boolean hasNext() {
+      if (node == null || bound == null) {
+        return node != null;
+      }
+      int compare = bound.compareTo(node.getData());
+      return descending ? compare <= 0 : compare >= 0;
+    }
+
+    /**
+     * Returns the next value of the iterator.
+     *
+     * @throws NoSuchElementException if the iterator has no more values to return
+     */
+    public R next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more values in range.");
+      }
+      MultisetNode<R> current = (MultisetNode<R>) node;
+      int count = current.multiplicity();
+      R value = current.valueAt(descending ? count - 1 - index : index);
+      if (++index == count) {
+        index = 0;
+        node = step(node);
+      }
+      return value;
+    }
+
+    /**
+     * Returns the node after node in iteration order, or null if there is none.
+     */
+    private BinaryTreeNode<R> step(BinaryTreeNode<R> node) {
+      BinaryTreeNode<R> down = descending ? node.childLeft() : node.childRight();
+      if (down != null) {
+        while ((descending ? down.childRight() : down.childLeft()) != null) {
+          down = descending ? down.childRight() : down.childLeft();
+        }
+        return down;
+      }
+      BinaryTreeNode<R> up = node.parent();
+      while (up != null && node == (descending ? up.childLeft() : up.childRight())) {
+        node = up;
+        up = up.parent();
+      }
+      return up;
+    }
+
+  }
+
+  /**
+   * A value with a key that decides its order and a label that does not, like a song that is
+   * ordered by year only.
+   */
+  private static class Keyed implements Comparable<Keyed> {
+    private final int key;
+    private final String label;
+
+    private Keyed(int key, String label) {
+      this.key = key;
+      this.label = label;
+    }
+
+    @Override
+    public int compareTo(Keyed other) {
+      return Integer.compare(key, other.key);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Keyed && ((Keyed) other).key == key
+          && ((Keyed) other).label.equals(label);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * key + label.hashCode();
+    }
+  }
+
+  /**
+   * @return the number of nodes in the subtree rooted at node
+   */
+  private static int countNodes(BinaryTreeNode<?> node) {
+    return (node == null) ? 0 : 1 + countNodes(node.childLeft()) + countNodes(node.childRight());
+  }
+
+  /**
+   * Tests that many duplicates share one node per key, and that size, iteration, select, rank and
+   * countInRange still count every duplicate.
+   */
+  @Test
+  public void MultisetTest1() {
+    MultisetRedBlackTree<Integer> tree = new MultisetRedBlackTree<>();
+    for (int i = 0; i < 7000; i++) {
+      tree.insert(1950 + (i * 37) % 70);
+    }
+    assertTrue(tree.size() == 7000 && tree.satisfiesRedBlackProperties());
+    assertTrue(tree.root.multiplicity() == 100 && countNodes(tree.root) == 70);
+    assertTrue(tree.contains(1950) && tree.contains(2019) && !tree.contains(2020));
+
+    List<Integer> values = drain(tree.iterator());
+    for (int i = 0; i < 7000; i++) {
+      assertTrue(values.get(i) == 1950 + i / 100);
+      assertTrue(tree.select(i) == 1950 + i / 100);
+    }
+    assertTrue(tree.rank(1960) == 1000 && tree.countInRange(1960, 1961) == 200);
+    assertTrue(drain(tree.iterator(1960, 1961)).size() == 200);
+    assertTrue(drain(tree.descendingIterator(1960, 1961)).get(0) == 1961);
+    assertTrue(tree.stream(null, 1950).count() == 100);
+    assertTrue(tree.subSet(2000, null).size() == 2000);
+  }
+
+  /**
+   * Tests that values which compare equal but are not equal are all kept and returned, and that
+   * removal takes values out of a node before unlinking it.
+   */
+  @Test
+  public void MultisetTest2() {
+    MultisetRedBlackTree<Keyed> tree = new MultisetRedBlackTree<>();
+    for (int year = 0; year < 20; year++) {
+      tree.insert(new Keyed(year, "a"));
+      tree.insert(new Keyed(year, "b"));
+      tree.insert(new Keyed(year, "a"));
+    }
+    assertTrue(tree.size() == 60 && tree.satisfiesRedBlackProperties());
+    List<Keyed> values = drain(tree.iterator(new Keyed(5, ""), new Keyed(5, "")));
+    assertTrue(values.size() == 3 && values.get(0).label.equals("a")
+        && values.get(1).label.equals("a") && values.get(2).label.equals("b"));
+
+    assertTrue(tree.removeFirst().equals(new Keyed(0, "a")));
+    assertTrue(tree.removeLast().equals(new Keyed(19, "b")));
+    for (int year = 0; year < 20; year += 2) {
+      assertTrue(tree.remove(new Keyed(year, "")));
+    }
+    assertTrue(tree.size() == 48 && tree.satisfiesRedBlackProperties());
+    assertTrue(tree.remove(new Keyed(0, "")) && !tree.contains(new Keyed(0, "")));
+    for (int i = 0; i < 47; i++) {
+      assertTrue(tree.pollFirst() != null && tree.satisfiesRedBlackProperties());
+    }
+    assertTrue(tree.isEmpty() && tree.pollLast() == null);
+
+    // remove takes out the value that is equal to its argument, wherever it is in the node
+    for (String label : new String[] {"a", "b", "c", "b"}) {
+      tree.insert(new Keyed(1, label));
+    }
+    assertTrue(tree.remove(new Keyed(1, "c")) && tree.remove(new Keyed(1, "a")));
+    assertTrue(tree.remove(new Keyed(1, "b")));
+    assertEquals(List.of(new Keyed(1, "b")), drain(tree.iterator()));
+  }
+
+  /**
+   * Tests removeRange, split, join, union, intersection and difference on multiset trees, with
+   * keys shared between the trees, and that a multiset tree cannot be joined or merged with a
+   * plain one.
+   */
+  @Test
+  public void MultisetTest3() {
+    MultisetRedBlackTree<Integer> tree = new MultisetRedBlackTree<>();
+    for (int i = 0; i < 300; i++) {
+      tree.insert(i % 30);
+    }
+    assertTrue(tree.removeRange(10, 19) == 100 && tree.size() == 200);
+    assertTrue(tree.satisfiesRedBlackProperties() && countNodes(tree.root) == 20);
+
+    MultisetRedBlackTree<Integer> upper = tree.split(25);
+    assertTrue(tree.size() == 150 && upper.size() == 50 && upper.countInRange(25, 25) == 10);
+    assertTrue(tree.satisfiesRedBlackProperties() && upper.satisfiesRedBlackProperties());
+
+    // the pivot, the largest key of middle and the smallest key of upper are all 24
+    MultisetRedBlackTree<Integer> middle = tree.split(24);
+    upper.insert(24);
+    MultisetRedBlackTree<Integer> joined = MultisetRedBlackTree.join(middle, 24, upper);
+    assertTrue(middle.isEmpty() && upper.isEmpty() && joined.satisfiesRedBlackProperties());
+    assertTrue(joined.size() == 62 && joined.countInRange(24, 24) == 12);
+    assertTrue(countNodes(joined.root) == 6 && joined.select(61) == 29);
+    joined = MultisetRedBlackTree.join(joined, 29, new MultisetRedBlackTree<>());
+    assertTrue(joined.countInRange(29, 29) == 11 && countNodes(joined.root) == 6);
+
+    MultisetRedBlackTree<Integer> other = new MultisetRedBlackTree<>();
+    RedBlackTree<Integer> plain = new RedBlackTree<>();
+    for (int i = 0; i < 40; i++) {
+      other.insert(20 + i % 20);
+      plain.insert(i % 5);
+    }
+    joined.union(other);
+    joined.union(plain);
+    assertTrue(other.isEmpty() && plain.isEmpty() && joined.satisfiesRedBlackProperties());
+    assertTrue(joined.size() == 143 && countNodes(joined.root) == 25);
+    assertTrue(joined.countInRange(0, 0) == 8 && joined.countInRange(24, 24) == 14);
+
+    for (int i = 0; i < 30; i += 3) {
+      other.insert(i);
+      plain.insert(i);
+    }
+    joined.intersection(other);
+    assertTrue(joined.size() == 44 && joined.satisfiesRedBlackProperties());
+    joined.difference(plain);
+    assertTrue(joined.isEmpty());
+
+    MultisetRedBlackTree<Integer> left = new MultisetRedBlackTree<>();
+    RedBlackTree<Integer> right = new RedBlackTree<>();
+    left.insert(1);
+    right.insert(3);
+    assertThrows(IllegalArgumentException.class, () -> RedBlackTree.join(left, 2, right));
+    assertThrows(IllegalArgumentException.class, () -> RedBlackTree.join(right, 4, left));
+    right.insert(5);
+    assertThrows(IllegalArgumentException.class, () -> right.union(left));
+    assertTrue(left.size() == 1 && right.size() == 2);
+  }
+}
@@ -0,0 +1,433 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * This class represents a red-black tree of int keys whose nodes live outside of the Java heap, in
+ * a direct ByteBuffer. Each node is a fixed size record holding its key, a payload id, the indices
+ * of its children and parent, and its color. The payload id is an int chosen by the caller, usually
+ * the position of the object the key belongs to in an array kept on the heap, so the garbage
+ * collector only sees that array and one buffer no matter how many keys the index holds.
+ *
+ * Node 0 is a shared black sentinel that stands in for every missing child and for the parent of
+ * the root. The buffer doubles in size whenever it is full; the memory of a replaced buffer is
+ * returned to the system once the buffer object itself is garbage collected. Like in
+ * BinarySearchTree, duplicate keys are allowed and go into the left subtree of the keys equal to
+ * them.
+ */
+public class OffHeapIntSortedCollection implements IntIterableSortedCollection {
+
+  // payload id stored for keys inserted without one
+  public static final int NO_PAYLOAD = -1;
+
+  // index of the sentinel node
+  private static final int NIL = 0;
+  // byte offsets of the fields within a node record, and the size of a record
+  private static final int KEY = 0;
+  private static final int PAYLOAD = 4;
+  private static final int LEFT = 8;
+  private static final int RIGHT = 12;
+  private static final int PARENT = 16;
+  private static final int RED = 20;
+  private static final int NODE_BYTES = 24;
+  // number of node records the buffer can hold when the collection is created
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private ByteBuffer nodes = allocate(INITIAL_CAPACITY);
+  // index of the root node, or NIL when the tree is empty
+  private int root = NIL;
+  // number of keys in the tree; the nodes in use are the ones at indices 1 to size
+  private int size = 0;
+
+  /**
+   * Returns a new, zeroed direct buffer with room for capacity node records.
+   */
+  private static ByteBuffer allocate(int capacity) {
+    return ByteBuffer.allocateDirect(capacity * NODE_BYTES).order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * @return the value of field in node
+   */
+  private int get(int node, int field) {
+    return nodes.getInt(node * NODE_BYTES + field);
+  }
+
+  /**
+   * Sets field in node to value.
+   */
+  private void set(int node, int field, int value) {
+    nodes.putInt(node * NODE_BYTES + field, value);
+  }
+
+  /**
+   * @return true if node is red, false if it is black
+   */
+  private boolean isRed(int node) {
+    return get(node, RED) != 0;
+  }
+
+  /**
+   * Colors node red when isRed is true, and black otherwise.
+   */
+  private void setRed(int node, boolean isRed) {
+    set(node, RED, isRed ? 1 : 0);
+  }
+
+  /**
+   * Inserts a new key without a payload id.
+   *
+   * @param key the new key being inserted
+   */
+  @Override
+  public void insert(int key) {
+    insert(key, NO_PAYLOAD);
+  }
+
+  /**
+   * Inserts a new key along with the payload id it maps to, and then restores the red-black
+   * properties.
+   *
+   * @param key     the new key being inserted
+   * @param payload the payload id returned for this key by payloadIterator
+   * @throws IllegalStateException if the buffer would have to grow beyond 2GB
+   */
+  public void insert(int key, int payload) throws IllegalStateException {
+    int capacity = nodes.capacity() / NODE_BYTES;
+    if (size + 1 == capacity) {
+      if (capacity > Integer.MAX_VALUE / 2 / NODE_BYTES) {
+        throw new IllegalStateException("Off-heap index is full.");
+      }
+      ByteBuffer larger = allocate(2 * capacity);
+      larger.put(nodes.duplicate().clear());
+      nodes = larger;
+    }
+    int node = ++size;
+    set(node, KEY, key);
+    set(node, PAYLOAD, payload);
+    set(node, LEFT, NIL);
+    set(node, RIGHT, NIL);
+    setRed(node, true);
+
+    int up = NIL;
+    int current = root;
+    while (current != NIL) {
+      up = current;
+      current = get(current, (key <= get(current, KEY)) ? LEFT : RIGHT);
+    }
+    set(node, PARENT, up);
+    if (up == NIL) {
+      root = node;
+    } else {
+      set(up, (key <= get(up, KEY)) ? LEFT : RIGHT, node);
+    }
+    ensureRedProperty(node);
+  }
+
+  /**
+   * Repairs a red node whose parent may also be red. A red aunt is recolored black together with
+   * the parent, which moves the problem up to the grandparent; a black aunt is handled with one or
+   * two rotations, after which the tree is valid again. The sentinel is black, so the loop stops
+   * at the root.
+   */
+  private void ensureRedProperty(int node) {
+    while (isRed(get(node, PARENT))) {
+      int up = get(node, PARENT);
+      int grand = get(up, PARENT);
+      boolean parentIsLeft = (up == get(grand, LEFT));
+      int aunt = get(grand, parentIsLeft ? RIGHT : LEFT);
+      if (isRed(aunt)) {
+        setRed(up, false);
+        setRed(aunt, false);
+        setRed(grand, true);
+        node = grand;
+        continue;
+      }
+      if (node == get(up, parentIsLeft ? RIGHT : LEFT)) {
+        // inner child: rotate it into the parent's position first
+        node = up;
+        rotate(node, parentIsLeft);
+        up = get(node, PARENT);
+      }
+      setRed(up, false);
+      setRed(grand, true);
+      rotate(grand, !parentIsLeft);
+    }
+    setRed(root, false);
+  }
+
+  /**
+   * Rotates node down to the left (when toLeft is true) or to the right, so that its right or left
+   * child takes its place.
+   */
+  private void rotate(int node, boolean toLeft) {
+    int outward = toLeft ? RIGHT : LEFT;
+    int inward = toLeft ? LEFT : RIGHT;
+    int child = get(node, outward);
+    int inner = get(child, inward);
+    set(node, outward, inner);
+    set(child, inward, node);
+    if (inner != NIL) {
+      set(inner, PARENT, node);
+    }
+
+    int up = get(node, PARENT);
+    set(child, PARENT, up);
+    if (up == NIL) {
+      root = child;
+    } else {
+      set(up, (node == get(up, LEFT)) ? LEFT : RIGHT, child);
+    }
+    set(node, PARENT, child);
+  }
+
+  /**
+   * Check whether key is stored in the collection.
+   *
+   * @param key the value to check for in the collection
+   * @return true if the collection contains key one or more times, and false otherwise
+   */
+  @Override
+  public boolean contains(int key) {
+    int node = root;
+    while (node != NIL) {
+      int nodeKey = get(node, KEY);
+      if (key == nodeKey) {
+        return true;
+      }
+      node = get(node, (key < nodeKey) ? LEFT : RIGHT);
+    }
+    return false;
+  }
+
+  /**
+   * Counts the number of keys in the collection, with each duplicate key being counted separately
+   * within the value returned.
+   *
+   * @return the number of keys in the collection, including duplicates
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Checks if the collection is empty.
+   *
+   * @return true if the collection contains 0 keys, false otherwise
+   */
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes all keys and duplicates from the collection. The buffer keeps its size, so the index
+   * can be refilled to its previous size without allocating.
+   */
+  @Override
+  public void clear() {
+    root = NIL;
+    size = 0;
+  }
+
+  /**
+   * Returns an iterator over the keys between min and max (inclusive), in ascending order.
+   *
+   * @param min the smallest key to return
+   * @param max the largest key to return
+   * @return an iterator over the keys in that range
+   */
+  @Override
+  public PrimitiveIterator.OfInt rangeIterator(int min, int max) {
+    return new OffHeapIterator(lowerBound(min), max, KEY);
+  }
+
+  /**
+   * Returns an iterator over the payload ids of the keys between min and max (inclusive), in
+   * ascending order of their keys.
+   *
+   * @param min the smallest key whose payload id is returned
+   * @param max the largest key whose payload id is returned
+   * @return an iterator over the payload ids in that range
+   */
+  public PrimitiveIterator.OfInt payloadIterator(int min, int max) {
+    return new OffHeapIterator(lowerBound(min), max, PAYLOAD);
+  }
+
+  /**
+   * Returns the leftmost node whose key is at least min, or NIL if there is none.
+   */
+  private int lowerBound(int min) {
+    int first = NIL;
+    int node = root;
+    while (node != NIL) {
+      if (get(node, KEY) >= min) {
+        first = node;
+        node = get(node, LEFT);
+      } else {
+        node = get(node, RIGHT);
+      }
+    }
+    return first;
+  }
+
+  /**
+   * Returns the node that follows node in ascending order, or NIL if node holds the largest key.
+   */
+  private int successor(int node) {
+    int right = get(node, RIGHT);
+    if (right != NIL) {
+      node = right;
+      for (int left = get(node, LEFT); left != NIL; left = get(node, LEFT)) {
+        node = left;
+      }
+      return node;
+    }
+    int up = get(node, PARENT);
+    while (up != NIL && node == get(up, RIGHT)) {
+      node = up;
+      up = get(up, PARENT);
+    }
+    return up;
+  }
+
+  /**
+   * Nested class for the iterators of an OffHeapIntSortedCollection, which return either the keys
+   * or the payload ids of the nodes they visit. They must not be used after the collection is
+   * changed.
+   */
+  private class OffHeapIterator implements PrimitiveIterator.OfInt {
+
+    // the node visited by the next call to nextInt(), or NIL at the end of the tree
+    private int next;
+    // stores the stop point (maximum key) for the iterator
+    private final int max;
+    // the field that nextInt() returns
+    private final int field;
+
+    private OffHeapIterator(int first, int max, int field) {
+      this.next = first;
+      this.max = max;
+      this.field = field;
+    }
+
+    /**
+     * Returns true if the iterator has another value to return, and false otherwise.
+     */
+    public boolean hasNext() {
+      return next != NIL && get(next, KEY) <= max;
+    }
+
+    /**
+     * Returns the next value of the iterator.
+     *
+     * @throws NoSuchElementException if the iterator has no more values to return
+     */
+    public int nextInt() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more values in range.");
+      }
+      int value = get(next, field);
+      next = successor(next);
+      return value;
+    }
+
+  }
+
+  /**
+   * Returns the black height of the subtree rooted at node, or -1 if it breaks the red property,
+   * has paths with different numbers of black nodes, holds keys outside of [low, high], or has a
+   * child whose parent link does not point back to its parent.
+   */
+  private int checkSubtree(int node, long low, long high) {
+    if (node == NIL) {
+      return 0;
+    }
+    int key = get(node, KEY);
+    int left = get(node, LEFT);
+    int right = get(node, RIGHT);
+    if (key < low || key > high || isRed(node) && (isRed(left) || isRed(right))
+        || left != NIL && get(left, PARENT) != node || right != NIL && get(right, PARENT) != node) {
+      return -1;
+    }
+    int leftHeight = checkSubtree(left, low, key);
+    int rightHeight = checkSubtree(right, key, high);
+    if (leftHeight < 0 || leftHeight != rightHeight) {
+      return -1;
+    }
+    return leftHeight + (isRed(node) ? 0 : 1);
+  }
+
+  /**
+   * Tests inserts with payload ids and duplicates, lookups, range iteration and clear.
+   */
+  @Test
+  public void Test1() {
+    OffHeapIntSortedCollection index = new OffHeapIntSortedCollection();
+    assertTrue(index.isEmpty() && !index.contains(0) && !index.iterator().hasNext());
+    int[] years = new int[3000];
+    for (int i = 0; i < years.length; i++) {
+      years[i] = 1950 + (i * 389) % 70;
+      index.insert(years[i], i);
+    }
+    assertTrue(index.size() == 3000 && index.checkSubtree(index.root, 1950, 2019) > 0);
+    assertTrue(index.contains(1950) && index.contains(2019) && !index.contains(2020));
+
+    int[] sorted = years.clone();
+    Arrays.sort(sorted);
+    assertArrayEquals(sorted, IntRedBlackTree.drain(index.iterator()));
+    int[] payloads = IntRedBlackTree.drain(index.payloadIterator(1990, 1991));
+    assertTrue(payloads.length == IntRedBlackTree.drain(index.rangeIterator(1990, 1991)).length);
+    for (int payload : payloads) {
+      assertTrue(years[payload] == 1990 || years[payload] == 1991);
+    }
+    index.insert(5);
+    assertArrayEquals(new int[] {OffHeapIntSortedCollection.NO_PAYLOAD},
+        IntRedBlackTree.drain(index.payloadIterator(5, 5)));
+
+    index.clear();
+    assertTrue(index.isEmpty() && !index.contains(1950) && !index.iterator().hasNext());
+  }
+
+  /**
+   * Tests the buffer: it is direct, each node is a fixed size record at index times NODE_BYTES,
+   * growing it doubles its capacity while keeping every record, keys, payloads and colors
+   * included, and clear keeps it so that refilling the index does not allocate.
+   */
+  @Test
+  public void Test2() {
+    OffHeapIntSortedCollection index = new OffHeapIntSortedCollection();
+    assertTrue(index.nodes.isDirect() && index.nodes.capacity() == INITIAL_CAPACITY * NODE_BYTES);
+    index.insert(-7, 70);
+    assertTrue(index.nodes.getInt(NODE_BYTES + KEY) == -7);
+    assertTrue(index.nodes.getInt(NODE_BYTES + PAYLOAD) == 70);
+
+    for (int i = 1; i < INITIAL_CAPACITY; i++) {
+      index.insert(i * 17 % 1000, i);
+    }
+    ByteBuffer grown = index.nodes;
+    assertTrue(grown.capacity() == 2 * INITIAL_CAPACITY * NODE_BYTES && grown.isDirect());
+    assertTrue(index.get(1, KEY) == -7 && index.get(INITIAL_CAPACITY, PAYLOAD) == 1023);
+    assertTrue(index.checkSubtree(index.root, Long.MIN_VALUE, Long.MAX_VALUE) > 0);
+    int[] keys = IntRedBlackTree.drain(index.rangeIterator(17, 17));
+    int[] payloads = IntRedBlackTree.drain(index.payloadIterator(17, 17));
+    assertTrue(keys.length == payloads.length && keys.length > 1);
+    for (int payload : payloads) {
+      assertTrue(payload * 17 % 1000 == 17);
+    }
+
+    index.clear();
+    // the sentinel takes one record, so the grown buffer is full at 2 * INITIAL_CAPACITY - 1 keys
+    for (int i = 0; i < 2 * INITIAL_CAPACITY - 1; i++) {
+      index.insert(i);
+    }
+    assertTrue(index.nodes == grown && index.size() == 2 * INITIAL_CAPACITY - 1);
+    index.insert(-1);
+    assertTrue(index.nodes != grown && index.get(2 * INITIAL_CAPACITY, KEY) == -1);
+  }
+}
@@ -0,0 +1,440 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * This class represents a red-black tree whose nodes are never changed once they are created.
+ * Inserting a value copies only the nodes on the path from the root down to the new value, and the
+ * new version of the tree shares every other node with the old one. This makes snapshot() an O(1)
+ * operation, and every iterator works on the version of the tree that existed when it was created,
+ * so readers can scan a consistent view while a writer keeps inserting, without any locking on the
+ * reader side.
+ */
+public class PersistentRedBlackTree<T extends Comparable<T>>
+    implements IterableSortedCollection<T> {
+
+  /**
+   * An immutable node of a PersistentRedBlackTree. Nodes are shared between versions of a tree, so
+   * none of their fields can change after construction.
+   */
+  protected static final class Node<T> {
+    // the value stored in this node
+    protected final T data;
+    // the node's left and right children
+    protected final Node<T> left;
+    protected final Node<T> right;
+    // whether this is a red or black node
+    protected final boolean isRed;
+    // number of nodes in the subtree rooted at this node, including this node itself
+    protected final int size;
+
+    private Node(T data, Node<T> left, Node<T> right, boolean isRed) {
+      this.data = data;
+      this.left = left;
+      this.right = right;
+      this.isRed = isRed;
+      this.size = 1 + sizeOf(left) + sizeOf(right);
+    }
+  }
+
+  // the current version of the tree; writes are published by replacing this reference
+  private volatile Node<T> root;
+
+  private Comparable<T> maximum = null;
+  private Comparable<T> minimum = null;
+
+  /**
+   * Creates an empty tree.
+   */
+  public PersistentRedBlackTree() {
+    this.root = null;
+  }
+
+  /**
+   * Returns a new tree whose current version is the one rooted at root.
+   */
+  private static <T extends Comparable<T>> PersistentRedBlackTree<T> withRoot(Node<T> root) {
+    PersistentRedBlackTree<T> tree = new PersistentRedBlackTree<>();
+    tree.root = root;
+    return tree;
+  }
+
+  /**
+   * Returns a new tree that starts out as the current version of this tree. Later inserts into
+   * either tree are not seen by the other. Runs in O(1) time, since the two trees simply share all
+   * of their nodes until one of them is changed.
+   *
+   * @return a snapshot of this tree
+   */
+  public PersistentRedBlackTree<T> snapshot() {
+    return withRoot(this.root);
+  }
+
+  /**
+   * Returns a new version of this tree that also contains data, and leaves this tree unchanged.
+   * Only the O(log n) nodes on the path to the new value are copied.
+   *
+   * @param data the new value
+   * @return a new tree holding every value of this tree plus data
+   * @throws NullPointerException if data is null
+   */
+  public PersistentRedBlackTree<T> inserted(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+    return withRoot(insert(this.root, data));
+  }
+
+  /**
+   * Inserts a new data value into the tree by building a new version of it and publishing that
+   * version. Iterators and snapshots created earlier keep seeing the version they started with.
+   * Concurrent calls to this method are serialized with each other.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException if data argument is null, we do not allow null values to be stored
+   *                              within a SortedCollection
+   */
+  @Override
+  public synchronized void insert(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+    this.root = insert(this.root, data);
+  }
+
+  /**
+   * Returns the root of a new version of the tree rooted at node that also contains data. The new
+   * root is always black.
+   */
+  private static <T extends Comparable<T>> Node<T> insert(Node<T> node, T data) {
+    Node<T> result = insertHelper(node, data);
+    return result.isRed ? new Node<>(result.data, result.left, result.right, false) : result;
+  }
+
+  /**
+   * Copies the path from node down to where data belongs, adding data there as a new red node, and
+   * rebalances each copied node on the way back up. Equal values go to the left, like in
+   * BinarySearchTree.
+   */
+  private static <T extends Comparable<T>> Node<T> insertHelper(Node<T> node, T data) {
+    if (node == null) {
+      return new Node<>(data, null, null, true);
+    }
+    if (data.compareTo(node.data) <= 0) {
+      return balance(node.data, insertHelper(node.left, data), node.right, node.isRed);
+    } else {
+      return balance(node.data, node.left, insertHelper(node.right, data), node.isRed);
+    }
+  }
+
+  /**
+   * Creates the node for data with the given children and color. When the node is black and one
+   * of its children is red with a red child of its own, the three nodes involved are rearranged
+   * into a red node with two black children instead, which repairs the red property without
+   * changing any black heights. The violation, if any, then moves one level up.
+   */
+  private static <T> Node<T> balance(T data, Node<T> left, Node<T> right, boolean isRed) {
+    if (!isRed) {
+      if (isRed(left) && isRed(left.left)) {
+        return new Node<>(left.data, blacken(left.left), new Node<>(data, left.right, right, false),
+            true);
+      }
+      if (isRed(left) && isRed(left.right)) {
+        return new Node<>(left.right.data, new Node<>(left.data, left.left, left.right.left, false),
+            new Node<>(data, left.right.right, right, false), true);
+      }
+      if (isRed(right) && isRed(right.left)) {
+        return new Node<>(right.left.data, new Node<>(data, left, right.left.left, false),
+            new Node<>(right.data, right.left.right, right.right, false), true);
+      }
+      if (isRed(right) && isRed(right.right)) {
+        return new Node<>(right.data, new Node<>(data, left, right.left, false),
+            blacken(right.right), true);
+      }
+    }
+    return new Node<>(data, left, right, isRed);
+  }
+
+  /**
+   * @return a black copy of node
+   */
+  private static <T> Node<T> blacken(Node<T> node) {
+    return new Node<>(node.data, node.left, node.right, false);
+  }
+
+  /**
+   * @return true if node is a red node, false if it is black or null
+   */
+  private static boolean isRed(Node<?> node) {
+    return node != null && node.isRed;
+  }
+
+  /**
+   * @return the number of nodes in the subtree rooted at node, or 0 when node is null
+   */
+  private static int sizeOf(Node<?> node) {
+    return node == null ? 0 : node.size;
+  }
+
+  /**
+   * Check whether data is stored in the current version of the tree.
+   *
+   * @param data the value to check for in the collection
+   * @return true if the collection contains data one or more times, and false otherwise
+   */
+  @Override
+  public boolean contains(Comparable<T> data) {
+    Node<T> node = this.root;
+    while (node != null) {
+      int compare = data.compareTo(node.data);
+      if (compare == 0) {
+        return true;
+      }
+      node = (compare < 0) ? node.left : node.right;
+    }
+    return false;
+  }
+
+  /**
+   * Counts the number of values in the current version of the tree, with each duplicate value
+   * being counted separately within the value returned. Runs in O(1) time.
+   *
+   * @return the number of values in the collection, including duplicates
+   */
+  @Override
+  public int size() {
+    return sizeOf(this.root);
+  }
+
+  /**
+   * Checks if the collection is empty.
+   *
+   * @return true if the collection contains 0 values, false otherwise
+   */
+  @Override
+  public boolean isEmpty() {
+    return this.root == null;
+  }
+
+  /**
+   * Removes all values and duplicates from the collection. Snapshots and iterators created earlier
+   * are not affected.
+   */
+  @Override
+  public synchronized void clear() {
+    this.root = null;
+  }
+
+  /**
+   * Allows setting the start (minimum) value of the iterator. When this method is called, every
+   * iterator created after it will use the minimum set by this method until this method is called
+   * again to set a new minimum value.
+   *
+   * @param min the minimum for iterators created for this tree, or null for no minimum
+   */
+  @Override
+  public void setIteratorMin(Comparable<T> min) {
+    this.minimum = min;
+  }
+
+  /**
+   * Allows setting the stop (maximum) value of the iterator. When this method is called, every
+   * iterator created after it will use the maximum set by this method until this method is called
+   * again to set a new maximum value.
+   *
+   * @param max the maximum for iterators created for this tree, or null for no maximum
+   */
+  @Override
+  public void setIteratorMax(Comparable<T> max) {
+    this.maximum = max;
+  }
+
+  /**
+   * Returns an iterator over the current version of the tree, using the minimum and maximum set by
+   * setIteratorMin and setIteratorMax.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return new PersistentIterator<>(this.root, this.minimum, this.maximum);
+  }
+
+  /**
+   * Returns an iterator over the values between min and max (inclusive) in the current version of
+   * the tree. A null min or max leaves that end of the range unbounded. Values inserted after this
+   * call are never returned by the iterator.
+   *
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return an iterator over the values in that range
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    return new PersistentIterator<>(this.root, min, max);
+  }
+
+  /**
+   * Nested class for Iterator objects created for this tree. It works like
+   * IterableRedBlackTree.RBTIterator, but walks immutable nodes, so the version it started on can
+   * never change underneath it.
+   */
+  protected static class PersistentIterator<R> implements Iterator<R> {
+
+    // stores the start point (minimum) for the iterator
+    private final Comparable<R> min;
+    // stores the stop point (maximum) for the iterator
+    private final Comparable<R> max;
+    // stores the stack that keeps track of the inorder traversal
+    private final ArrayDeque<Node<R>> stack = new ArrayDeque<>();
+
+    /**
+     * Creates an iterator over the version of the tree rooted at root.
+     *
+     * @param root root node of the version to traverse
+     * @param min  the minimum value that the iterator will return, or null for no minimum
+     * @param max  the maximum value that the iterator will return, or null for no maximum
+     */
+    public PersistentIterator(Node<R> root, Comparable<R> min, Comparable<R> max) {
+      this.min = min;
+      this.max = max;
+      buildStackHelper(root);
+    }
+
+    /**
+     * Pushes the path from node down to the smallest value in its subtree that is at least the
+     * minimum, skipping subtrees that lie entirely below the minimum.
+     */
+    private void buildStackHelper(Node<R> node) {
+      while (node != null) {
+        if (min != null && min.compareTo(node.data) > 0) {
+          node = node.right;
+        } else {
+          stack.push(node);
+          node = node.left;
+        }
+      }
+    }
+
+    /**
+     * Returns true if the iterator has another value to return, and false otherwise.
+     */
+    public boolean hasNext() {
+      return !stack.isEmpty() && (max == null || max.compareTo(stack.peek().data) >= 0);
+    }
+
+    /**
+     * Returns the next value of the iterator.
+     *
+     * @throws NoSuchElementException if the iterator has no more values to return
+     */
+    public R next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more values in range.");
+      }
+      Node<R> node = stack.pop();
+      buildStackHelper(node.right);
+      return node.data;
+    }
+
+  }
+
+  /**
+   * Returns the black height of the subtree rooted at node, or -1 if it has a red node with a red
+   * child or paths with different numbers of black nodes.
+   */
+  private static int checkSubtree(Node<?> node) {
+    if (node == null) {
+      return 0;
+    }
+    if (node.isRed && (isRed(node.left) || isRed(node.right))) {
+      return -1;
+    }
+    int leftHeight = checkSubtree(node.left);
+    int rightHeight = checkSubtree(node.right);
+    if (leftHeight < 0 || leftHeight != rightHeight) {
+      return -1;
+    }
+    return leftHeight + (node.isRed ? 0 : 1);
+  }
+
+  /**
+   * Adds every node of the subtree rooted at node to nodes, compared by identity.
+   */
+  private static void collectNodes(Node<?> node, Set<Node<?>> nodes) {
+    if (node != null) {
+      nodes.add(node);
+      collectNodes(node.left, nodes);
+      collectNodes(node.right, nodes);
+    }
+  }
+
+  /**
+   * Tests that inserted copies only the nodes on the path to the new value: the new version shares
+   * every other node with the old one, the old version is left exactly as it was, and both stay
+   * balanced.
+   */
+  @Test
+  public void Test1() {
+    PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<>();
+    for (int i = 0; i < 1000; i++) {
+      tree.insert((i * 389) % 500);
+    }
+    Node<Integer> before = tree.root;
+    Set<Node<?>> oldNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+    collectNodes(before, oldNodes);
+
+    for (int value : new int[] {-1, 250, 250, 1000}) {
+      PersistentRedBlackTree<Integer> extended = tree.inserted(value);
+      Set<Node<?>> newNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+      collectNodes(extended.root, newNodes);
+      newNodes.removeAll(oldNodes);
+
+      // a red-black tree of 1000 nodes is at most 2 log(1001) < 20 levels tall, and each level of
+      // the path is copied once, plus the few nodes a rebalance creates
+      int height = 2 * checkSubtree(extended.root);
+      assertTrue(height > 0 && newNodes.size() <= height + 3);
+      assertTrue(extended.size() == 1001 && extended.contains(value));
+    }
+
+    assertTrue(tree.root == before && tree.size() == 1000 && !tree.contains(-1));
+    assertTrue(checkSubtree(before) > 0 && before.size == 1000);
+    List<Integer> values = IterableRedBlackTree.drain(tree.iterator());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(values.get(i) == i / 2);
+    }
+    assertThrows(NullPointerException.class, () -> tree.inserted(null));
+  }
+
+  /**
+   * Tests that snapshots, earlier versions and running iterators never see inserts made after they
+   * were created.
+   */
+  @Test
+  public void Test2() {
+    PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<>();
+    for (int i = 0; i < 100; i++) {
+      tree.insert(i);
+    }
+
+    PersistentRedBlackTree<Integer> snapshot = tree.snapshot();
+    Iterator<Integer> iterator = tree.iterator();
+    PersistentRedBlackTree<Integer> extended = tree.inserted(-1);
+    for (int i = 100; i < 200; i++) {
+      tree.insert(i);
+      assertTrue(iterator.next() == i - 100);
+    }
+
+    assertTrue(snapshot.size() == 100 && !snapshot.contains(150) && !snapshot.contains(-1));
+    assertTrue(extended.size() == 101 && extended.contains(-1) && !extended.contains(150));
+    assertTrue(tree.size() == 200 && tree.contains(150) && !tree.contains(-1));
+    assertFalse(iterator.hasNext());
+
+    tree.clear();
+    assertTrue(tree.isEmpty() && snapshot.size() == 100);
+  }
+}
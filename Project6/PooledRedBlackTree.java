@@ -0,0 +1,587 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This class represents a red-black tree that stores its nodes in a pool of parallel arrays rather
+ * than as one RBTNode object per value. Node i consists of data[i], left[i], right[i], parent[i]
+ * and bit i of the red bitmap, so the whole tree is made of five arrays no matter how many values
+ * it holds, which leaves the garbage collector almost nothing to trace. Index 0 is a shared black
+ * sentinel that stands in for every missing child and for the parent of the root.
+ *
+ * Removed nodes go onto a free list and are reused by later inserts, and the arrays double in
+ * length whenever they are full. Like in BinarySearchTree, duplicate values are allowed and go
+ * into the left subtree of the values equal to them.
+ */
+public class PooledRedBlackTree<T extends Comparable<T>> implements IterableSortedCollection<T> {
+
+  // index of the sentinel node
+  private static final int NIL = 0;
+  // length of the node arrays when the tree is created, including the sentinel
+  private static final int INITIAL_LENGTH = 64;
+
+  private Object[] data = new Object[INITIAL_LENGTH];
+  private int[] left = new int[INITIAL_LENGTH];
+  private int[] right = new int[INITIAL_LENGTH];
+  private int[] parent = new int[INITIAL_LENGTH];
+  // bit i is set when node i is red
+  private long[] red = new long[INITIAL_LENGTH / 64];
+
+  // index of the root node, or NIL when the tree is empty
+  private int root = NIL;
+  private int size = 0;
+  // lowest index that has never been handed out to a node
+  private int unused = 1;
+  // first node on the free list, which is linked through the right array, or NIL if it is empty
+  private int free = NIL;
+
+  private Comparable<T> maximum = null;
+  private Comparable<T> minimum = null;
+
+  /**
+   * @return the value stored in node
+   */
+  @SuppressWarnings("unchecked")
+  private T dataOf(int node) {
+    return (T) data[node];
+  }
+
+  /**
+   * @return true if node is red, false if it is black
+   */
+  private boolean isRed(int node) {
+    return (red[node >>> 6] & (1L << node)) != 0;
+  }
+
+  /**
+   * Colors node red when isRed is true, and black otherwise.
+   */
+  private void setRed(int node, boolean isRed) {
+    if (isRed) {
+      red[node >>> 6] |= 1L << node;
+    } else {
+      red[node >>> 6] &= ~(1L << node);
+    }
+  }
+
+  /**
+   * Returns a node holding value, taken from the free list when possible. The node arrays double
+   * in length when there is neither a free node nor an unused one left.
+   */
+  private int allocate(T value) {
+    int node;
+    if (free != NIL) {
+      node = free;
+      free = right[node];
+    } else {
+      if (unused == data.length) {
+        int length = 2 * data.length;
+        data = Arrays.copyOf(data, length);
+        left = Arrays.copyOf(left, length);
+        right = Arrays.copyOf(right, length);
+        parent = Arrays.copyOf(parent, length);
+        red = Arrays.copyOf(red, length / 64);
+      }
+      node = unused++;
+    }
+    data[node] = value;
+    left[node] = NIL;
+    right[node] = NIL;
+    setRed(node, true);
+    return node;
+  }
+
+  /**
+   * Puts node on the free list, dropping the reference to its value.
+   */
+  private void release(int node) {
+    data[node] = null;
+    right[node] = free;
+    free = node;
+  }
+
+  /**
+   * Inserts a new data value into the tree, and then restores the red-black properties.
+   *
+   * @param value the new value being inserted
+   * @throws NullPointerException if value is null, we do not allow null values to be stored within
+   *                              a SortedCollection
+   */
+  @Override
+  public void insert(T value) throws NullPointerException {
+    if (value == null) {
+      throw new NullPointerException("Data is null.");
+    }
+    int node = allocate(value);
+    int up = NIL;
+    int current = root;
+    boolean goLeft = true;
+    while (current != NIL) {
+      up = current;
+      goLeft = value.compareTo(dataOf(current)) <= 0;
+      current = goLeft ? left[current] : right[current];
+    }
+    parent[node] = up;
+    if (up == NIL) {
+      root = node;
+    } else if (goLeft) {
+      left[up] = node;
+    } else {
+      right[up] = node;
+    }
+    size++;
+    ensureRedProperty(node);
+  }
+
+  /**
+   * Repairs a red node whose parent may also be red. A red aunt is recolored black together with
+   * the parent, which moves the problem up to the grandparent; a black aunt is handled with one or
+   * two rotations, after which the tree is valid again. The sentinel is black, so the loop stops
+   * at the root.
+   */
+  private void ensureRedProperty(int node) {
+    while (isRed(parent[node])) {
+      int up = parent[node];
+      int grand = parent[up];
+      boolean parentIsLeft = (up == left[grand]);
+      int aunt = parentIsLeft ? right[grand] : left[grand];
+      if (isRed(aunt)) {
+        setRed(up, false);
+        setRed(aunt, false);
+        setRed(grand, true);
+        node = grand;
+        continue;
+      }
+      if (node == (parentIsLeft ? right[up] : left[up])) {
+        // inner child: rotate it into the parent's position first
+        node = up;
+        rotate(node, parentIsLeft);
+        up = parent[node];
+      }
+      setRed(up, false);
+      setRed(grand, true);
+      rotate(grand, !parentIsLeft);
+    }
+    setRed(root, false);
+  }
+
+  /**
+   * Rotates node down to the left (when toLeft is true) or to the right, so that its right or left
+   * child takes its place.
+   */
+  private void rotate(int node, boolean toLeft) {
+    int child = toLeft ? right[node] : left[node];
+    int inner = toLeft ? left[child] : right[child];
+    if (toLeft) {
+      right[node] = inner;
+      left[child] = node;
+    } else {
+      left[node] = inner;
+      right[child] = node;
+    }
+    if (inner != NIL) {
+      parent[inner] = node;
+    }
+    replaceChild(parent[node], node, child);
+    parent[node] = child;
+  }
+
+  /**
+   * Makes replacement take the place of node as a child of up (or as the root when up is NIL),
+   * and sets the parent of replacement to up. The parent of the sentinel may be set here; the
+   * removal code relies on that.
+   */
+  private void replaceChild(int up, int node, int replacement) {
+    if (up == NIL) {
+      root = replacement;
+    } else if (node == left[up]) {
+      left[up] = replacement;
+    } else {
+      right[up] = replacement;
+    }
+    parent[replacement] = up;
+  }
+
+  /**
+   * Removes one occurrence of key from the tree, and then restores the red-black properties. The
+   * removed node goes onto the free list.
+   *
+   * @param key the value to remove
+   * @return true if a value equal to key was found and removed, false otherwise
+   * @throws NullPointerException if key is null
+   */
+  public boolean remove(Comparable<T> key) throws NullPointerException {
+    if (key == null) {
+      throw new NullPointerException("Key is null.");
+    }
+    int node = root;
+    while (node != NIL) {
+      int compare = key.compareTo(dataOf(node));
+      if (compare == 0) {
+        break;
+      }
+      node = (compare < 0) ? left[node] : right[node];
+    }
+    if (node == NIL) {
+      return false;
+    }
+
+    // the node that is taken out of its position, and the node that moves into that position
+    int moved = node;
+    boolean movedWasRed = isRed(moved);
+    int replacement;
+    if (left[node] == NIL) {
+      replacement = right[node];
+      replaceChild(parent[node], node, replacement);
+    } else if (right[node] == NIL) {
+      replacement = left[node];
+      replaceChild(parent[node], node, replacement);
+    } else {
+      // the successor takes over node's position and color
+      moved = right[node];
+      while (left[moved] != NIL) {
+        moved = left[moved];
+      }
+      movedWasRed = isRed(moved);
+      replacement = right[moved];
+      if (parent[moved] == node) {
+        parent[replacement] = moved;
+      } else {
+        replaceChild(parent[moved], moved, replacement);
+        right[moved] = right[node];
+        parent[right[moved]] = moved;
+      }
+      replaceChild(parent[node], node, moved);
+      left[moved] = left[node];
+      parent[left[moved]] = moved;
+      setRed(moved, isRed(node));
+    }
+    if (!movedWasRed) {
+      ensureBlackProperty(replacement);
+    }
+    release(node);
+    size--;
+    return true;
+  }
+
+  /**
+   * Repairs the tree after a black node was removed from above node, which leaves every path
+   * through node one black node short. A red node simply turns black; otherwise the cases depend
+   * on node's sibling and its children, and either fix the shortage with rotations or push it one
+   * level up.
+   */
+  private void ensureBlackProperty(int node) {
+    while (node != root && !isRed(node)) {
+      int up = parent[node];
+      boolean isLeft = (node == left[up]);
+      int sibling = isLeft ? right[up] : left[up];
+      if (isRed(sibling)) {
+        setRed(sibling, false);
+        setRed(up, true);
+        rotate(up, isLeft);
+        sibling = isLeft ? right[up] : left[up];
+      }
+      int near = isLeft ? left[sibling] : right[sibling];
+      int far = isLeft ? right[sibling] : left[sibling];
+      if (!isRed(near) && !isRed(far)) {
+        setRed(sibling, true);
+        node = up;
+        continue;
+      }
+      if (!isRed(far)) {
+        setRed(near, false);
+        setRed(sibling, true);
+        rotate(sibling, !isLeft);
+        sibling = isLeft ? right[up] : left[up];
+        far = isLeft ? right[sibling] : left[sibling];
+      }
+      setRed(sibling, isRed(up));
+      setRed(up, false);
+      setRed(far, false);
+      rotate(up, isLeft);
+      node = root;
+    }
+    setRed(node, false);
+  }
+
+  /**
+   * Check whether data is stored in the tree.
+   *
+   * @param key the value to check for in the collection
+   * @return true if the collection contains data one or more times, and false otherwise
+   */
+  @Override
+  public boolean contains(Comparable<T> key) {
+    if (key == null) {
+      throw new NullPointerException("Key is null.");
+    }
+    int node = root;
+    while (node != NIL) {
+      int compare = key.compareTo(dataOf(node));
+      if (compare == 0) {
+        return true;
+      }
+      node = (compare < 0) ? left[node] : right[node];
+    }
+    return false;
+  }
+
+  /**
+   * Counts the number of values in the tree, with each duplicate value being counted separately
+   * within the value returned.
+   *
+   * @return the number of values in the collection, including duplicates
+   */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Checks if the collection is empty.
+   *
+   * @return true if the collection contains 0 values, false otherwise
+   */
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes all values and duplicates from the collection. The node arrays keep their length, so
+   * the tree can be refilled to its previous size without allocating.
+   */
+  @Override
+  public void clear() {
+    Arrays.fill(data, 0, unused, null);
+    root = NIL;
+    size = 0;
+    unused = 1;
+    free = NIL;
+  }
+
+  /**
+   * Allows setting the start (minimum) value of the iterator. When this method is called, every
+   * iterator created after it will use the minimum set by this method until this method is called
+   * again to set a new minimum value.
+   *
+   * @param min the minimum for iterators created for this tree, or null for no minimum
+   */
+  @Override
+  public void setIteratorMin(Comparable<T> min) {
+    this.minimum = min;
+  }
+
+  /**
+   * Allows setting the stop (maximum) value of the iterator. When this method is called, every
+   * iterator created after it will use the maximum set by this method until this method is called
+   * again to set a new maximum value.
+   *
+   * @param max the maximum for iterators created for this tree, or null for no maximum
+   */
+  @Override
+  public void setIteratorMax(Comparable<T> max) {
+    this.maximum = max;
+  }
+
+  /**
+   * Returns an iterator over the values in the tree, using the minimum and maximum set by
+   * setIteratorMin and setIteratorMax.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(this.minimum, this.maximum);
+  }
+
+  /**
+   * Returns an iterator over the values between min and max (inclusive). A null min or max leaves
+   * that end of the range unbounded. The iterator steps from node to node through the parent links
+   * and must not be used after the tree is changed.
+   *
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return an iterator over the values in that range
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    int first = NIL;
+    int node = root;
+    while (node != NIL) {
+      if (min == null || min.compareTo(dataOf(node)) <= 0) {
+        first = node;
+        node = left[node];
+      } else {
+        node = right[node];
+      }
+    }
+    return new PooledIterator(first, max);
+  }
+
+  /**
+   * Returns the node that follows node in ascending order, or NIL if node holds the largest value.
+   */
+  private int successor(int node) {
+    if (right[node] != NIL) {
+      node = right[node];
+      while (left[node] != NIL) {
+        node = left[node];
+      }
+      return node;
+    }
+    int up = parent[node];
+    while (up != NIL && node == right[up]) {
+      node = up;
+      up = parent[up];
+    }
+    return up;
+  }
+
+  /**
+   * Nested class for the iterators of a PooledRedBlackTree.
+   */
+  private class PooledIterator implements Iterator<T> {
+
+    // the node whose value next() returns, or NIL at the end of the tree
+    private int next;
+    // stores the stop point (maximum) for the iterator
+    private final Comparable<T> max;
+
+    private PooledIterator(int first, Comparable<T> max) {
+      this.next = first;
+      this.max = max;
+    }
+
+    /**
+     * Returns true if the iterator has another value to return, and false otherwise.
+     */
+    public boolean hasNext() {
+      return next != NIL && (max == null || max.compareTo(dataOf(next)) >= 0);
+    }
+
+    /**
+     * Returns the next value of the iterator.
+     *
+     * @throws NoSuchElementException if the iterator has no more values to return
+     */
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more values in range.");
+      }
+      T value = dataOf(next);
+      next = successor(next);
+      return value;
+    }
+
+  }
+
+  /**
+   * Returns the black height of the subtree rooted at node, or -1 if it breaks the red property,
+   * has paths with different numbers of black nodes, or has a child whose parent link does not
+   * point back to its parent.
+   */
+  private int checkSubtree(int node) {
+    if (node == NIL) {
+      return 0;
+    }
+    if (isRed(node) && (isRed(left[node]) || isRed(right[node]))
+        || left[node] != NIL && parent[left[node]] != node
+        || right[node] != NIL && parent[right[node]] != node) {
+      return -1;
+    }
+    int leftHeight = checkSubtree(left[node]);
+    int rightHeight = checkSubtree(right[node]);
+    if (leftHeight < 0 || leftHeight != rightHeight) {
+      return -1;
+    }
+    return leftHeight + (isRed(node) ? 0 : 1);
+  }
+
+  /**
+   * @return the number of nodes on the free list
+   */
+  private int freeCount() {
+    int count = 0;
+    for (int node = free; node != NIL; node = right[node]) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Tests that a removed node goes onto the free list with its value reference cleared, that the
+   * next insert takes it back before any unused index, and that removing a node with two children
+   * moves its successor's index into its place rather than copying values between indexes.
+   */
+  @Test
+  public void Test1() {
+    PooledRedBlackTree<Integer> tree = new PooledRedBlackTree<>();
+    // node i holds value i, since indexes are handed out in order starting at 1
+    for (int i = 1; i <= 20; i++) {
+      tree.insert(i);
+    }
+    assertTrue(tree.unused == 21 && tree.free == NIL && tree.dataOf(7) == 7);
+
+    int top = tree.root;
+    int successor = tree.successor(top);
+    assertTrue(tree.left[top] != NIL && tree.right[top] != NIL);
+    assertTrue(tree.remove(top));
+    assertTrue(tree.dataOf(successor) == successor && tree.checkSubtree(tree.root) > 0);
+    assertTrue(tree.free == top && tree.data[top] == null && tree.freeCount() == 1);
+
+    assertTrue(tree.remove(3) && tree.free == 3 && tree.data[3] == null && tree.freeCount() == 2);
+    tree.insert(100);
+    assertTrue(tree.dataOf(3) == 100 && tree.free == top && tree.unused == 21);
+    tree.insert(200);
+    assertTrue(tree.dataOf(top) == 200 && tree.free == NIL && tree.unused == 21);
+    tree.insert(300);
+    assertTrue(tree.dataOf(21) == 300 && tree.unused == 22);
+    assertTrue(tree.size() == 21 && tree.checkSubtree(tree.root) > 0);
+    assertThrows(NullPointerException.class, () -> tree.insert(null));
+  }
+
+  /**
+   * Tests that the node arrays and the red bitmap double together, that nodes past the first word
+   * of the bitmap keep their colors, and that clear keeps the arrays' length while dropping every
+   * value reference, so that refilling the tree does not allocate.
+   */
+  @Test
+  public void Test2() {
+    PooledRedBlackTree<Integer> tree = new PooledRedBlackTree<>();
+    for (int i = 0; i < 63; i++) {
+      tree.insert(i);
+    }
+    assertTrue(tree.data.length == INITIAL_LENGTH && tree.red.length == 1);
+    tree.insert(63);
+    assertTrue(tree.data.length == 2 * INITIAL_LENGTH && tree.red.length == 2);
+    assertTrue(tree.left.length == tree.data.length && tree.parent.length == tree.data.length);
+    for (int i = 64; i < 300; i++) {
+      tree.insert(i);
+    }
+    assertTrue(tree.data.length == 512 && tree.red.length == 8);
+    assertTrue(tree.checkSubtree(tree.root) > 0);
+
+    // removing every other value and inserting as many again reuses the freed nodes
+    for (int i = 0; i < 300; i += 2) {
+      assertTrue(tree.remove(i));
+    }
+    assertTrue(tree.freeCount() == 150 && tree.checkSubtree(tree.root) > 0);
+    for (int i = 0; i < 150; i++) {
+      tree.insert(1000 + i);
+    }
+    assertTrue(tree.freeCount() == 0 && tree.unused == 301 && tree.data.length == 512);
+    List<Integer> values = IterableRedBlackTree.drain(tree.iterator(290, 1001));
+    assertEquals(List.of(291, 293, 295, 297, 299, 1000, 1001), values);
+
+    tree.clear();
+    assertTrue(tree.isEmpty() && !tree.iterator().hasNext() && tree.unused == 1);
+    assertTrue(tree.data.length == 512 && tree.red.length == 8);
+    assertTrue(Arrays.stream(tree.data).allMatch(value -> value == null));
+    for (int i = 0; i < 300; i++) {
+      tree.insert(i);
+    }
+    assertTrue(tree.data.length == 512 && tree.size() == 300 && tree.contains(299));
+  }
+}
@@ -1,6 +1,14 @@
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
-import P106SubmissionChecker.RBTNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
 
@@ -16,100 +24,1264 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
    * parent. If this is not the case, the method terminates without making any changes to the tree.
    * If a red property violation is detected, then the method repairs this violation and any
    * additional red property violations that are generated as a result of the applied repair
-   * operation.
+   * operation. The repair works its way up the tree in a single loop: a red aunt is handled by
+   * recoloring and moving the violation two levels up, and a black aunt is handled by at most two
+   * rotations, after which the tree is valid again. The root may be left red, so callers have to
+   * color it black afterwards.
    * 
    * @param newNode a newly inserted red node, or a node turned red by previous repair
    */
   protected void ensureRedProperty(RBTNode<T> newNode) {
-    if (newNode == null || newNode.parent() == null || newNode.parent().parent() == null) {
-      System.out.println("Either the child, parent, or grandparent node is null");
+    RBTNode<T> node = newNode;
+
+    // only a red node with a red parent violates the red property
+    while (node != null && node.isRed && node.parent() != null && node.parent().isRed) {
+      RBTNode<T> parent = node.parent();
+      RBTNode<T> grandparent = parent.parent();
+      if (grandparent == null) {
+        // a red root gets colored black by the caller
+        return;
+      }
+
+      boolean parentIsLeft = grandparent.childLeft() == parent;
+      RBTNode<T> aunt = parentIsLeft ? grandparent.childRight() : grandparent.childLeft();
+
+      if (aunt != null && aunt.isRed) {
+        // red aunt: push the grandparent's black down to both of its children, which may leave the
+        // grandparent in violation with its own parent, so keep going from there
+        parent.isRed = false;
+        aunt.isRed = false;
+        grandparent.isRed = true;
+        node = grandparent;
+      } else {
+        // black aunt with node on the inside: rotate node above parent so that the violating pair
+        // lines up on the outside, then handle it like the outside case below
+        if (node.isRightChild() == parentIsLeft) {
+          rotate(node, parent);
+          parent = node;
+        }
+
+        // black aunt with the violation on the outside: swap the colors of parent and grandparent
+        // and rotate parent above grandparent, which repairs the tree completely
+        parent.isRed = false;
+        grandparent.isRed = true;
+        rotate(parent, grandparent);
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+
+    RBTNode<T> node = createNode(data);
+    node.isRed = true;
+    if (root == null) {
+      root = node;
+    } else {
+      super.insertHelper(node, root);
+      ensureRedProperty(node);
+    }
+
+    // ensure that the root node is always black
+    ((RBTNode<T>) this.root).isRed = false;
+  }
+
+  /**
+   * Inserts every value in data into this tree. The batch is sorted once up front. When the batch
+   * is at least as large as the tree, the existing values and the batch are merged and the tree is
+   * rebuilt in balanced shape in linear time. Otherwise the values are inserted in ascending order,
+   * and each insert starts its descent from the node inserted just before it rather than from the
+   * root, climbing only as far up as needed to find the subtree the next value belongs in. The
+   * subtree sizes above that subtree are not touched by the insert; they are recomputed when a
+   * later insert climbs past them, and once along the path from the last new node to the root when
+   * the batch is done, so a run of values that land close together costs little more than the
+   * distance between them.
+   * 
+   * @param data the values being inserted
+   * @throws NullPointerException if data or any of its values is null, in which case the tree is
+   *                              left unchanged
+   */
+  @Override
+  public void insertAll(Collection<? extends T> data) throws NullPointerException {
+    List<T> batch = new ArrayList<>(data);
+    for (T value : batch) {
+      if (value == null) {
+        throw new NullPointerException("Data is null.");
+      }
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+    Collections.sort(batch);
+
+    if (size() <= batch.size()) {
+      buildFromSorted(mergeInOrder(batch).iterator(), size() + batch.size());
+      return;
+    }
+
+    // only the ancestors of finger may hold stale subtree sizes: each insert leaves the nodes above
+    // the subtree it descended into one short. A rotation that moves a node off that path gives it
+    // children off the path, whose sizes are correct, so the size rotate recomputes for it is too
+    RBTNode<T> finger = null;
+    for (T value : batch) {
+      RBTNode<T> node = createNode(value);
+      if (finger == null) {
+        insertHelper(node, root);
+      } else {
+        // climb to the lowest ancestor of finger that is a left child with a parent at least as
+        // large as value; value lies between finger and that parent, so it belongs in this subtree.
+        // The nodes passed on the way are brought up to date, bottom up, before the descent
+        BinaryTreeNode<T> subtree = finger;
+        subtree.updateSize();
+        while (subtree.parent() != null && !(!subtree.isRightChild()
+            && value.compareTo(subtree.parent().getData()) <= 0)) {
+          subtree = subtree.parent();
+          subtree.updateSize();
+        }
+        insertHelper(node, subtree);
+      }
+      ensureRedProperty(node);
+      ((RBTNode<T>) root).isRed = false;
+      finger = node;
+    }
+
+    for (BinaryTreeNode<T> stale = finger; stale != null; stale = stale.parent()) {
+      stale.updateSize();
+    }
+  }
+
+  /**
+   * Returns a new list holding the values in this tree merged with the values in the sorted list
+   * batch, in ascending order. The tree is walked in order without recursion.
+   */
+  private List<T> mergeInOrder(List<T> batch) {
+    List<T> merged = new ArrayList<>(size() + batch.size());
+    int next = 0;
+    BinaryTreeNode<T> node = root;
+    // step down to the smallest node, then follow in-order successors using parent references
+    while (node != null && node.childLeft() != null) {
+      node = node.childLeft();
+    }
+    while (node != null) {
+      while (next < batch.size() && batch.get(next).compareTo(node.getData()) < 0) {
+        merged.add(batch.get(next++));
+      }
+      merged.add(node.getData());
+
+      if (node.childRight() != null) {
+        node = node.childRight();
+        while (node.childLeft() != null) {
+          node = node.childLeft();
+        }
+      } else {
+        while (node.isRightChild()) {
+          node = node.parent();
+        }
+        node = node.parent();
+      }
+    }
+    merged.addAll(batch.subList(next, batch.size()));
+    return merged;
+  }
+
+  /**
+   * Creates a red-black tree holding the first n values produced by values, which must come out in
+   * ascending order. The tree is built directly in its final balanced shape, one node per value, so
+   * this takes O(n) time and performs no comparisons beyond checking the order and no rotations.
+   * 
+   * @param values produces the values to store, in ascending order
+   * @param n      the number of values to take from values
+   * @return a new tree holding those values
+   * @throws IllegalArgumentException if n is negative or the values are not in ascending order
+   * @throws NullPointerException     if any of the values is null
+   * @throws NoSuchElementException   if values produces fewer than n values
+   */
+  public static <T extends Comparable<T>> RedBlackTree<T> fromSorted(Iterator<? extends T> values,
+      int n) throws IllegalArgumentException, NullPointerException, NoSuchElementException {
+    RedBlackTree<T> tree = new RedBlackTree<>();
+    tree.buildFromSorted(values, n);
+    return tree;
+  }
+
+  /**
+   * Creates a red-black tree holding every value in values. When the values are not already in
+   * ascending order, a sorted copy of them is made first. Either way the tree is then built in O(n)
+   * time, as described for fromSorted.
+   * 
+   * @param values the values to store, which are not modified
+   * @return a new tree holding those values
+   * @throws NullPointerException if any of the values is null
+   */
+  public static <T extends Comparable<T>> RedBlackTree<T> buildFrom(List<? extends T> values)
+      throws NullPointerException {
+    RedBlackTree<T> tree = new RedBlackTree<>();
+    List<? extends T> sorted = sortedView(values);
+    tree.buildFromSorted(sorted.iterator(), sorted.size());
+    return tree;
+  }
+
+  /**
+   * Creates a red-black tree holding every value in values, using all available cores. The values
+   * are copied into an array and sorted with Arrays.parallelSort, and then the left and right
+   * halves of the tree are built as separate fork/join tasks. The result has exactly the same shape
+   * and colors as the tree buildFrom would produce from the same values, because the sort is stable
+   * and both builders split every range at the same position.
+   * 
+   * @param values the values to store, which are not modified
+   * @return a new tree holding those values
+   * @throws NullPointerException if any of the values is null
+   */
+  public static <T extends Comparable<T>> RedBlackTree<T> buildFromParallel(
+      Collection<? extends T> values) throws NullPointerException {
+    RedBlackTree<T> tree = new RedBlackTree<>();
+    tree.buildFromSortedArray(sortedArray(values));
+    return tree;
+  }
+
+  /**
+   * Copies values into a new array and sorts it in parallel.
+   * 
+   * @throws NullPointerException if any of the values is null
+   */
+  @SuppressWarnings("unchecked")
+  protected static <T extends Comparable<T>> T[] sortedArray(Collection<? extends T> values)
+      throws NullPointerException {
+    // T always implements Comparable, so an array of Comparable can hold every value
+    T[] array = (T[]) values.toArray(new Comparable<?>[values.size()]);
+    for (T value : array) {
+      if (value == null) {
+        throw new NullPointerException("Data is null.");
+      }
+    }
+    Arrays.parallelSort(array);
+    return array;
+  }
+
+  /**
+   * Replaces the contents of this tree with the values in the sorted array values, building the
+   * balanced tree with fork/join tasks on the common pool.
+   * 
+   * @param values the values to store, in ascending order
+   */
+  protected void buildFromSortedArray(T[] values) {
+    root = new BuildTask(values, 0, values.length, 0, redDepth(values.length)).invoke();
+    if (root != null) {
+      ((RBTNode<T>) root).isRed = false;
+    }
+  }
+
+  /**
+   * Builds the balanced subtree for the values in positions start (inclusive) to end (exclusive) of
+   * a sorted array. Large ranges build their left half in a forked task while the current thread
+   * builds the right half. Ranges are split and colored exactly the way SortedBuilder does it.
+   */
+  private class BuildTask extends RecursiveTask<RBTNode<T>> {
+    private static final long serialVersionUID = 1L;
+
+    // ranges smaller than this are built by a single thread, since forking costs more than it saves
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+    private final T[] values;
+    private final int start;
+    private final int end;
+    private final int depth;
+    private final int redDepth;
+
+    private BuildTask(T[] values, int start, int end, int depth, int redDepth) {
+      this.values = values;
+      this.start = start;
+      this.end = end;
+      this.depth = depth;
+      this.redDepth = redDepth;
+    }
+
+    @Override
+    protected RBTNode<T> compute() {
+      if (end - start <= SEQUENTIAL_THRESHOLD) {
+        return build(start, end, depth);
+      }
+
+      int middle = start + (end - start - 1) / 2;
+      BuildTask leftTask = new BuildTask(values, start, middle, depth + 1, redDepth);
+      leftTask.fork();
+      RBTNode<T> right = new BuildTask(values, middle + 1, end, depth + 1, redDepth).compute();
+      RBTNode<T> left = leftTask.join();
+      return linkNode(middle, left, right, depth);
+    }
+
+    /**
+     * Builds the subtree for positions start to end on the current thread.
+     */
+    private RBTNode<T> build(int start, int end, int depth) {
+      if (start == end) {
+        return null;
+      }
+      int middle = start + (end - start - 1) / 2;
+      RBTNode<T> left = build(start, middle, depth + 1);
+      RBTNode<T> right = build(middle + 1, end, depth + 1);
+      return linkNode(middle, left, right, depth);
+    }
+
+    /**
+     * Creates the node for the value at position index, colored for the given depth, and attaches
+     * its two subtrees.
+     */
+    private RBTNode<T> linkNode(int index, RBTNode<T> left, RBTNode<T> right, int depth) {
+      RBTNode<T> node = createNode(values[index]);
+      node.isRed = depth == redDepth;
+      attach(node, left, right);
+      return node;
+    }
+  }
+
+  /**
+   * Returns values itself when it is already in ascending order, or a sorted copy of it otherwise.
+   * 
+   * @throws NullPointerException if any of the values is null
+   */
+  protected static <T extends Comparable<T>> List<? extends T> sortedView(List<? extends T> values)
+      throws NullPointerException {
+    T previous = null;
+    for (T value : values) {
+      if (value == null) {
+        throw new NullPointerException("Data is null.");
+      }
+      if (previous != null && previous.compareTo(value) > 0) {
+        List<T> copy = new ArrayList<>(values);
+        Collections.sort(copy);
+        return copy;
+      }
+      previous = value;
+    }
+    return values;
+  }
+
+  /**
+   * Replaces the contents of this tree with the first n values produced by values, building a
+   * balanced red-black tree in O(n) time. Every level of the tree is full except possibly the
+   * deepest one, and the nodes on that deepest level are colored red while all others are black,
+   * so every path from the root to a null child passes the same number of black nodes.
+   * 
+   * @param values produces the values to store, in ascending order
+   * @param n      the number of values to take from values
+   * @throws IllegalArgumentException if n is negative or the values are not in ascending order
+   * @throws NullPointerException     if any of the values is null
+   * @throws NoSuchElementException   if values produces fewer than n values
+   */
+  protected void buildFromSorted(Iterator<? extends T> values, int n)
+      throws IllegalArgumentException, NullPointerException, NoSuchElementException {
+    if (n < 0) {
+      throw new IllegalArgumentException("Cannot build a tree of " + n + " values.");
+    }
+    SortedBuilder builder = new SortedBuilder(values, redDepth(n));
+    root = builder.build(n, 0);
+    if (root != null) {
+      ((RBTNode<T>) root).isRed = false;
+    }
+  }
+
+  /**
+   * Returns the depth of the deepest level in a balanced tree of n nodes, which is the level whose
+   * nodes are colored red by the bulk builders.
+   */
+  protected static int redDepth(int n) {
+    return 31 - Integer.numberOfLeadingZeros(Math.max(n, 1));
+  }
+
+  /**
+   * Builds balanced subtrees from an iterator of ascending values, creating the nodes in in-order
+   * sequence so that each value is read exactly once.
+   */
+  private class SortedBuilder {
+    private final Iterator<? extends T> values;
+    private final int redDepth;
+    private T previous = null;
+
+    private SortedBuilder(Iterator<? extends T> values, int redDepth) {
+      this.values = values;
+      this.redDepth = redDepth;
+    }
+
+    /**
+     * Builds a subtree of count nodes whose root sits at the given depth of the whole tree, taking
+     * the next count values from the iterator. The left subtree gets (count - 1) / 2 nodes and the
+     * right subtree gets the rest.
+     */
+    private RBTNode<T> build(int count, int depth) {
+      if (count == 0) {
+        return null;
+      }
+
+      int leftCount = (count - 1) / 2;
+      RBTNode<T> left = build(leftCount, depth + 1);
+
+      T value = values.next();
+      if (value == null) {
+        throw new NullPointerException("Data is null.");
+      }
+      if (previous != null && previous.compareTo(value) > 0) {
+        throw new IllegalArgumentException("Values are not in ascending order.");
+      }
+      previous = value;
+      RBTNode<T> node = createNode(value);
+      node.isRed = depth == redDepth;
+
+      RBTNode<T> right = build(count - 1 - leftCount, depth + 1);
+      attach(node, left, right);
+      return node;
+    }
+  }
+
+  /**
+   * Returns the value at position index in the sorted order of this tree, where index 0 is the
+   * smallest value. Duplicates occupy one position each. Runs in O(log n) time by using the subtree
+   * sizes stored in each node.
+   * 
+   * @param index the zero-based position of the value to return
+   * @return the value at that position
+   * @throws IndexOutOfBoundsException if index is negative or not less than size()
+   */
+  public T select(int index) throws IndexOutOfBoundsException {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException(
+          "Index " + index + " is out of bounds for size " + size());
+    }
+
+    BinaryTreeNode<T> node = root;
+    while (true) {
+      int leftSize = BinaryTreeNode.sizeOf(node.childLeft());
+      if (index < leftSize) {
+        node = node.childLeft();
+      } else if (index < leftSize + node.multiplicity()) {
+        return node.valueAt(index - leftSize);
+      } else {
+        // skip over the left subtree and the values of this node
+        index -= leftSize + node.multiplicity();
+        node = node.childRight();
+      }
+    }
+  }
+
+  /**
+   * Counts the values in this tree that are strictly smaller than key. This is also the position
+   * select() would return the first value equal to key at, if there is one. Runs in O(log n) time.
+   * 
+   * @param key the value to compare against
+   * @return the number of values smaller than key
+   * @throws NullPointerException if key is null
+   */
+  public int rank(Comparable<T> key) throws NullPointerException {
+    if (key == null) {
+      throw new NullPointerException("Key is null.");
+    }
+    return countBelow(key, false);
+  }
+
+  /**
+   * Counts the values in this tree that fall between min and max, including min and max themselves.
+   * A null min or max leaves that end of the range unbounded, the same way the tree's iterators
+   * treat them. Runs in O(log n) time.
+   * 
+   * @param min the smallest value to count, or null for no minimum
+   * @param max the largest value to count, or null for no maximum
+   * @return the number of values in the range, including duplicates
+   */
+  public int countInRange(Comparable<T> min, Comparable<T> max) {
+    int upper = (max == null) ? size() : countBelow(max, true);
+    int lower = (min == null) ? 0 : countBelow(min, false);
+    return Math.max(0, upper - lower);
+  }
+
+  /**
+   * Counts the values smaller than key, or smaller than or equal to key when inclusive is true, by
+   * descending from the root and adding up the sizes of the subtrees that lie to the left of the
+   * path.
+   */
+  private int countBelow(Comparable<T> key, boolean inclusive) {
+    int count = 0;
+    BinaryTreeNode<T> node = root;
+    while (node != null) {
+      int compare = key.compareTo(node.getData());
+      if (compare < 0 || (compare == 0 && !inclusive)) {
+        node = node.childLeft();
+      } else {
+        // the values of this node and everything to its left are counted
+        count += BinaryTreeNode.sizeOf(node.childLeft()) + node.multiplicity();
+        node = node.childRight();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Removes one occurrence of data from this tree. When the tree holds several values equal to
+   * data, only one of them is removed.
+   * 
+   * @param data the value to remove
+   * @return true if a value equal to data was found and removed, false otherwise
+   * @throws NullPointerException if data is null
+   */
+  public boolean remove(Comparable<T> data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+
+    RBTNode<T> node = (RBTNode<T>) root;
+    while (node != null) {
+      int compare = data.compareTo(node.data);
+      if (compare == 0) {
+        removeNode(node);
+        return true;
+      }
+      node = (compare < 0) ? node.childLeft() : node.childRight();
+    }
+    return false;
+  }
+
+  /**
+   * Removes and returns the smallest value in this tree.
+   * 
+   * @return the value that was removed
+   * @throws NoSuchElementException if the tree is empty
+   */
+  public T removeFirst() throws NoSuchElementException {
+    if (root == null) {
+      throw new NoSuchElementException("Tree is empty.");
+    }
+
+    RBTNode<T> node = (RBTNode<T>) root;
+    while (node.childLeft() != null) {
+      node = node.childLeft();
+    }
+    T data = node.data;
+    removeNode(node);
+    return data;
+  }
+
+  /**
+   * Removes and returns the largest value in this tree.
+   * 
+   * @return the value that was removed
+   * @throws NoSuchElementException if the tree is empty
+   */
+  public T removeLast() throws NoSuchElementException {
+    if (root == null) {
+      throw new NoSuchElementException("Tree is empty.");
+    }
+
+    RBTNode<T> node = (RBTNode<T>) root;
+    while (node.childRight() != null) {
+      node = node.childRight();
+    }
+    T data = node.data;
+    removeNode(node);
+    return data;
+  }
+
+  /**
+   * Removes every value between min and max from this tree, including min and max themselves. A
+   * null min or max leaves that end of the range unbounded. Rather than deleting the values one at
+   * a time, the tree is split into the values below, inside and above the range, and the outer two
+   * pieces are joined back together. This takes O(log n) time no matter how many values are
+   * removed.
+   * 
+   * @param min the smallest value to remove, or null for no minimum
+   * @param max the largest value to remove, or null for no maximum
+   * @return the number of values that were removed
+   */
+  public int removeRange(Comparable<T> min, Comparable<T> max) {
+    Fragment<T> below = new Fragment<>((RBTNode<T>) root, blackHeight((RBTNode<T>) root));
+    Fragment<T> inside = new Fragment<>(null, 0);
+    Fragment<T> above = new Fragment<>(null, 0);
+
+    if (min == null) {
+      inside.set(below.root, below.blackHeight);
+      below.set(null, 0);
+    } else {
+      split(below.root, below.blackHeight, min, false, below, inside);
+    }
+    if (max != null) {
+      split(inside.root, inside.blackHeight, max, true, inside, above);
+    }
+
+    int removed = BinaryTreeNode.sizeOf(inside.root);
+    join(below, above, below);
+    root = below.root;
+    if (root != null) {
+      ((RBTNode<T>) root).isRed = false;
+    }
+    return removed;
+  }
+
+  /**
+   * Splits this tree at key. Every value greater than or equal to key is moved into a new tree,
+   * which is returned, and this tree keeps every value smaller than key. Both trees are valid
+   * red-black trees afterwards. Runs in O(log n) time, since no values are copied or re-inserted.
+   * 
+   * @param key the value to split at
+   * @return a new tree holding the values of this tree that are greater than or equal to key
+   * @throws NullPointerException if key is null
+   */
+  public RedBlackTree<T> split(Comparable<T> key) throws NullPointerException {
+    if (key == null) {
+      throw new NullPointerException("Key is null.");
+    }
+
+    Fragment<T> less = new Fragment<>(null, 0);
+    Fragment<T> greater = new Fragment<>(null, 0);
+    split((RBTNode<T>) root, blackHeight((RBTNode<T>) root), key, false, less, greater);
+
+    setRoot(less);
+    RedBlackTree<T> upper = createEmpty();
+    upper.setRoot(greater);
+    return upper;
+  }
+
+  /**
+   * Creates a tree holding every value of left, then pivot, then every value of right. Every value
+   * in left must be smaller than or equal to pivot, and pivot must be smaller than or equal to
+   * every value in right. Both left and right are left empty, since their nodes are reused for the
+   * new tree. Runs in O(log n) time: the shorter tree is hung off the side of the taller one where
+   * their black heights match.
+   * 
+   * @param left  the tree with the smaller values
+   * @param pivot the value that goes between the two trees
+   * @param right the tree with the larger values
+   * @return a new tree of the same kind as left holding all of the values
+   * @throws NullPointerException     if any argument is null
+   * @throws IllegalArgumentException if the values are not in order, left and right are the same
+   *                                  non-empty tree, or right is not empty and stores a different
+   *                                  kind of node than left
+   */
+  public static <T extends Comparable<T>> RedBlackTree<T> join(RedBlackTree<T> left, T pivot,
+      RedBlackTree<T> right) throws NullPointerException, IllegalArgumentException {
+    if (left == null || pivot == null || right == null) {
+      throw new NullPointerException("Cannot join null trees or values.");
+    }
+    if (left == right && left.root != null) {
+      throw new IllegalArgumentException("Cannot join a tree with itself.");
+    }
+    if ((left.root != null && pivot.compareTo(left.extreme(false)) < 0)
+        || (right.root != null && pivot.compareTo(right.extreme(true)) > 0)) {
+      throw new IllegalArgumentException("Values of left, pivot and right are not in order.");
+    }
+    if (right.root != null && left.groupsEqualKeys() != right.groupsEqualKeys()) {
+      throw new IllegalArgumentException("Cannot join trees that store different kinds of nodes.");
+    }
+    return left.joinWith(pivot, right);
+  }
+
+  /**
+   * Does the work of join once its arguments are checked: creates a node for pivot and joins this
+   * tree and right around it. Subclasses whose nodes hold several values override this to merge
+   * pivot into an existing node instead.
+   * 
+   * @param pivot the value that goes between this tree and right
+   * @param right the tree with the larger values, which stores the same kind of node as this one
+   * @return a new tree of the same kind as this one holding all of the values
+   */
+  protected RedBlackTree<T> joinWith(T pivot, RedBlackTree<T> right) {
+    return joinAround(createNode(pivot), right);
+  }
+
+  /**
+   * Moves every node of this tree, then pivot, then every node of right into a new tree of the same
+   * kind as this one, which is returned, and leaves this tree and right empty.
+   * 
+   * @param pivot a detached node that goes between this tree and right
+   * @param right the tree with the larger values
+   * @return the joined tree
+   */
+  protected RedBlackTree<T> joinAround(RBTNode<T> pivot, RedBlackTree<T> right) {
+    Fragment<T> joined = new Fragment<>(null, 0);
+    RBTNode<T> leftRoot = (RBTNode<T>) root;
+    RBTNode<T> rightRoot = (RBTNode<T>) right.root;
+    join(leftRoot, blackHeight(leftRoot), pivot, rightRoot, blackHeight(rightRoot), joined);
+    root = null;
+    right.root = null;
+
+    RedBlackTree<T> tree = createEmpty();
+    tree.setRoot(joined);
+    return tree;
+  }
+
+  /**
+   * Adds every value of other to this tree, keeping duplicates, and leaves other empty. The
+   * smaller of the two trees drives the merge: its root splits the other tree in two, the halves
+   * are merged recursively and joined back together around that root. With m the size of the
+   * smaller tree and n the size of the larger, this takes O(m log(n/m + 1)) time.
+   * 
+   * @param other the tree whose values are moved into this one
+   * @throws NullPointerException     if other is null
+   * @throws IllegalArgumentException if other is this tree, or other is not empty and stores a
+   *                                  different kind of node than this tree
+   */
+  public void union(RedBlackTree<T> other) throws NullPointerException, IllegalArgumentException {
+    checkOther(other);
+    if (other.root != null && groupsEqualKeys() != other.groupsEqualKeys()) {
+      throw new IllegalArgumentException("Cannot merge trees that store different kinds of nodes.");
+    }
+    RBTNode<T> mine = (RBTNode<T>) root;
+    RBTNode<T> theirs = (RBTNode<T>) other.root;
+    if (size() < other.size()) {
+      RBTNode<T> swap = mine;
+      mine = theirs;
+      theirs = swap;
+    }
+
+    Fragment<T> result = new Fragment<>(null, 0);
+    union(theirs, blackHeight(theirs), mine, blackHeight(mine), result);
+    setRoot(result);
+    other.root = null;
+  }
+
+  /**
+   * Removes every value from this tree that is not equal to some value in other, and leaves other
+   * empty. Values of this tree that are kept keep all of their duplicates. With m the size of
+   * other, this takes O(m log(n/m + 1)) time.
+   * 
+   * @param other the tree holding the values to keep
+   * @throws NullPointerException     if other is null
+   * @throws IllegalArgumentException if other is this tree
+   */
+  public void intersection(RedBlackTree<T> other)
+      throws NullPointerException, IllegalArgumentException {
+    checkOther(other);
+    Fragment<T> result = new Fragment<>(null, 0);
+    filter((RBTNode<T>) root, blackHeight((RBTNode<T>) root), (RBTNode<T>) other.root,
+        blackHeight((RBTNode<T>) other.root), true, result);
+    setRoot(result);
+    other.root = null;
+  }
+
+  /**
+   * Removes every value from this tree that is equal to some value in other, and leaves other
+   * empty. With m the size of other, this takes O(m log(n/m + 1)) time.
+   * 
+   * @param other the tree holding the values to remove
+   * @throws NullPointerException     if other is null
+   * @throws IllegalArgumentException if other is this tree
+   */
+  public void difference(RedBlackTree<T> other)
+      throws NullPointerException, IllegalArgumentException {
+    checkOther(other);
+    Fragment<T> result = new Fragment<>(null, 0);
+    filter((RBTNode<T>) root, blackHeight((RBTNode<T>) root), (RBTNode<T>) other.root,
+        blackHeight((RBTNode<T>) other.root), false, result);
+    setRoot(result);
+    other.root = null;
+  }
+
+  /**
+   * Creates a new, empty tree of the same kind as this one. Used by split and join so that their
+   * results keep the behavior of subclasses.
+   * 
+   * @return a new empty tree
+   */
+  protected RedBlackTree<T> createEmpty() {
+    return new RedBlackTree<>();
+  }
+
+  /**
+   * Creates the node that insert, insertAll and the bulk builders link into the tree for a new
+   * value. Subclasses override this to store extra information in their nodes. The parallel build
+   * calls it from several threads at once.
+   * 
+   * @param data the value the new node stores
+   * @return a new red node holding data
+   */
+  protected RBTNode<T> createNode(T data) {
+    return new RBTNode<>(data);
+  }
+
+  /**
+   * @throws NullPointerException     if other is null
+   * @throws IllegalArgumentException if other is this tree
+   */
+  private void checkOther(RedBlackTree<T> other)
+      throws NullPointerException, IllegalArgumentException {
+    if (other == null) {
+      throw new NullPointerException("Other tree is null.");
+    }
+    if (other == this) {
+      throw new IllegalArgumentException("Cannot combine a tree with itself.");
+    }
+  }
+
+  /**
+   * Tells whether this tree keeps all values that compare equal to each other in a single node.
+   * join and union only link the nodes of two trees together when both answer the same, since the
+   * sizes and iterators of the result would disagree otherwise.
+   * 
+   * @return false, since this tree stores one value per node
+   */
+  protected boolean groupsEqualKeys() {
+    return false;
+  }
+
+  /**
+   * Returns the smallest value in this non-empty tree when smallest is true, or the largest
+   * otherwise.
+   */
+  private T extreme(boolean smallest) {
+    BinaryTreeNode<T> node = root;
+    while ((smallest ? node.childLeft() : node.childRight()) != null) {
+      node = smallest ? node.childLeft() : node.childRight();
+    }
+    return node.getData();
+  }
+
+  /**
+   * Makes the fragment the contents of this tree, coloring its root black.
+   */
+  private void setRoot(Fragment<T> fragment) {
+    root = fragment.root;
+    if (root != null) {
+      ((RBTNode<T>) root).isRed = false;
+    }
+  }
+
+  /**
+   * Unlinks node from this tree and restores the red-black properties. A node with two children
+   * first trades places (and colors) with its in-order successor, which has no left child, so that
+   * node can be unlinked from the successor's old position. Every other node keeps its values.
+   * 
+   * @param node a node currently in this tree
+   */
+  protected void removeNode(RBTNode<T> node) {
+    if (node.childLeft() != null && node.childRight() != null) {
+      RBTNode<T> successor = node.childRight();
+      while (successor.childLeft() != null) {
+        successor = successor.childLeft();
+      }
+      swapWithSuccessor(node, successor);
+    }
+
+    RBTNode<T> child = (node.childLeft() != null) ? node.childLeft() : node.childRight();
+    RBTNode<T> parent = node.parent();
+
+    // move child up into the position node held
+    if (child != null) {
+      child.setParent(parent);
+    }
+    if (parent == null) {
+      root = child;
+    } else if (parent.childLeft() == node) {
+      parent.setChildLeft(child);
+    } else {
+      parent.setChildRight(child);
+    }
+
+    // every ancestor loses the values of the unlinked node from its subtree
+    for (BinaryTreeNode<T> ancestor = parent; ancestor != null; ancestor = ancestor.parent()) {
+      ancestor.updateSize();
+    }
+    node.setParent(null);
+    node.setChildLeft(null);
+    node.setChildRight(null);
+
+    // removing a red node never changes a black height, and a red child can take over the black
+    // of the node it replaced
+    if (node.isRed) {
+      return;
+    }
+    if (child != null && child.isRed) {
+      child.isRed = false;
       return;
     }
+    ensureBlackProperty(child, parent);
+  }
 
-    RBTNode<T> parent = newNode.parent();
-    RBTNode<T> grandparent = newNode.parent().parent();
-    RBTNode<T> sibling =
-        (grandparent.childLeft() == parent) ? grandparent.childRight() : grandparent.childLeft();
+  /**
+   * Moves successor, the left-most node in the right subtree of node, into node's position and
+   * node into successor's old one, swapping their colors so that the tree keeps its shape and
+   * coloring. Sizes are left for the caller to recompute.
+   */
+  private void swapWithSuccessor(RBTNode<T> node, RBTNode<T> successor) {
+    RBTNode<T> parent = node.parent();
+    RBTNode<T> left = node.childLeft();
+    RBTNode<T> right = node.childRight();
+    RBTNode<T> successorParent = successor.parent();
+    RBTNode<T> successorRight = successor.childRight();
 
-    // has black parent
-    if (!parent.isRed) {
-      return;
+    if (parent == null) {
+      root = successor;
+    } else if (parent.childLeft() == node) {
+      parent.setChildLeft(successor);
+    } else {
+      parent.setChildRight(successor);
+    }
+    successor.setParent(parent);
+    successor.setChildLeft(left);
+    left.setParent(successor);
+    if (successor == right) {
+      successor.setChildRight(node);
+      node.setParent(successor);
+    } else {
+      successor.setChildRight(right);
+      right.setParent(successor);
+      successorParent.setChildLeft(node);
+      node.setParent(successorParent);
+    }
 
+    node.setChildLeft(null);
+    node.setChildRight(successorRight);
+    if (successorRight != null) {
+      successorRight.setParent(node);
     }
+    boolean isRed = node.isRed;
+    node.isRed = successor.isRed;
+    successor.isRed = isRed;
+  }
+
+  /**
+   * Repairs a black height violation after a black node was removed from below parent. Every path
+   * through node (which may be null) has one black node fewer than the paths through its sibling.
+   * The deficit is either fixed with at most three rotations, or moved up to parent by recoloring
+   * the sibling red and the repair continues from there.
+   * 
+   * @param node   the node that took the removed node's place, or null
+   * @param parent the parent of node, or null if node is the root
+   */
+  protected void ensureBlackProperty(RBTNode<T> node, RBTNode<T> parent) {
+    while (parent != null && !isRed(node)) {
+      // node may be null, but its sibling never is, so this comparison is unambiguous
+      boolean nodeIsLeft = parent.childLeft() == node;
+      RBTNode<T> sibling = nodeIsLeft ? parent.childRight() : parent.childLeft();
+
+      // red sibling: rotate it above parent, which gives node a black sibling
+      if (sibling.isRed) {
+        sibling.isRed = false;
+        parent.isRed = true;
+        rotate(sibling, parent);
+        sibling = nodeIsLeft ? parent.childRight() : parent.childLeft();
+      }
+
+      RBTNode<T> near = nodeIsLeft ? sibling.childLeft() : sibling.childRight();
+      RBTNode<T> far = nodeIsLeft ? sibling.childRight() : sibling.childLeft();
 
-    // assigns the node to a certain case violation
-    if (sibling != null && sibling.isRed) {
-      case1(newNode);
-      ensureRedProperty(grandparent);
-    } else if (sibling == null || !sibling.isRed) {
-      if ((grandparent.childLeft() == parent && parent.childLeft() == newNode)
-          || (grandparent.childRight() == parent && parent.childRight() == newNode)) {
-        case2(newNode);
+      if (!isRed(near) && !isRed(far)) {
+        // black sibling with black children: take one black off the sibling's side too, which
+        // moves the deficit up to parent
+        sibling.isRed = true;
+        node = parent;
+        parent = node.parent();
       } else {
-        case3(newNode);
+        // black sibling with a red child on the inside: rotate that child above the sibling so the
+        // red child ends up on the outside
+        if (!isRed(far)) {
+          near.isRed = false;
+          sibling.isRed = true;
+          rotate(near, sibling);
+          far = sibling;
+          sibling = near;
+        }
+
+        // black sibling with a red child on the outside: rotate the sibling above parent and
+        // recolor, which adds the missing black to node's side
+        sibling.isRed = parent.isRed;
+        parent.isRed = false;
+        far.isRed = false;
+        rotate(sibling, parent);
+        return;
+      }
+    }
+
+    if (node != null) {
+      node.isRed = false;
+    }
+  }
+
+  /**
+   * @return true if node is a red node, false if it is black or null
+   */
+  private static boolean isRed(RBTNode<?> node) {
+    return node != null && node.isRed;
+  }
+
+  /**
+   * Counts the black nodes on the path from node down to its left-most null child, including node
+   * itself. In a valid red-black tree every path down from node has this many black nodes.
+   */
+  private static int blackHeight(RBTNode<?> node) {
+    int height = 0;
+    for (; node != null; node = node.childLeft()) {
+      if (!node.isRed) {
+        height++;
       }
     }
+    return height;
   }
 
-  private void case1(RBTNode<T> child) {
-    RBTNode<T> parent = child.parent();
-    RBTNode<T> grandparent = parent.parent();
-    RBTNode<T> sibling =
-        (grandparent.childLeft() == parent) ? grandparent.childRight() : grandparent.childLeft();
+  /**
+   * A red-black subtree that is not attached to any tree, together with its black height. The root
+   * of a fragment may be red. Fragments are what split produces and what join combines.
+   */
+  private static class Fragment<T> {
+    private RBTNode<T> root;
+    private int blackHeight;
+
+    private Fragment(RBTNode<T> root, int blackHeight) {
+      set(root, blackHeight);
+    }
 
-    parent.flipColor();
-    if (sibling != null) {
-      sibling.flipColor();
+    private void set(RBTNode<T> root, int blackHeight) {
+      this.root = root;
+      this.blackHeight = blackHeight;
     }
-    grandparent.flipColor();
-    // could result in the grandparent causing a double red violation so have to check for that
-    ensureRedProperty(grandparent);
   }
 
-  private void case2(RBTNode<T> child) {
-    if (child.parent() == null || child.parent().parent() == null) {
+  /**
+   * Splits the subtree rooted at node into the values that are smaller than key, which are stored
+   * in less, and the values that are greater than or equal to key, which are stored in greater.
+   * When inclusive is true, values equal to key go into less instead. The nodes of the subtree are
+   * reused, and the subtree is no longer valid afterwards. Runs in O(log n) time.
+   * 
+   * @param node        the root of the subtree to split, which may be null
+   * @param blackHeight the black height of that subtree
+   * @param key         the value to split at
+   * @param inclusive   whether values equal to key belong in less
+   * @param less        receives the fragment holding the smaller values
+   * @param greater     receives the fragment holding the larger values
+   */
+  private void split(RBTNode<T> node, int blackHeight, Comparable<T> key, boolean inclusive,
+      Fragment<T> less, Fragment<T> greater) {
+    if (node == null) {
+      less.set(null, 0);
+      greater.set(null, 0);
       return;
     }
 
-    child.parent().flipColor();
-    child.parent().parent().flipColor();
-    rotate(child.parent(), child.parent().parent());
+    RBTNode<T> left = node.childLeft();
+    RBTNode<T> right = node.childRight();
+    int childHeight = blackHeight - (node.isRed ? 0 : 1);
+    detach(left);
+    detach(right);
+    node.setChildLeft(null);
+    node.setChildRight(null);
+
+    int compare = key.compareTo(node.data);
+    if (compare < 0 || (compare == 0 && !inclusive)) {
+      // node and its right subtree go to greater, and its left subtree still needs splitting
+      split(left, childHeight, key, inclusive, less, greater);
+      join(greater.root, greater.blackHeight, node, right, childHeight, greater);
+    } else {
+      // node and its left subtree go to less, and its right subtree still needs splitting
+      split(right, childHeight, key, inclusive, less, greater);
+      join(left, childHeight, node, less.root, less.blackHeight, less);
+    }
   }
 
-  private void case3(RBTNode<T> child) {
-    if (child.parent() == null) {
+  /**
+   * Joins two fragments where every value in left is smaller than or equal to every value in
+   * right, and stores the combined fragment in result. The largest node of left is taken out and
+   * used as the pivot between the two.
+   */
+  private void join(Fragment<T> left, Fragment<T> right, Fragment<T> result) {
+    if (left.root == null) {
+      result.set(right.root, right.blackHeight);
+      return;
+    }
+    if (right.root == null) {
+      result.set(left.root, left.blackHeight);
       return;
     }
 
-    rotate(child, child.parent());
-    // child becomes parent of the parent node, so have to figure out where the parent is and call
-    // case2 through there
-    if (child.parent() != null) {
-      if (child.childRight() != null) {
-        case2(child.childRight());
-      } else {
-        case2(child.childLeft());
-      }
+    RBTNode<T> largest = left.root;
+    while (largest.childRight() != null) {
+      largest = largest.childRight();
     }
+    RBTNode<T> pivot = largest;
+    RBTNode<T> rest = repairFragment(left.root, () -> removeNode(pivot));
+
+    join(rest, blackHeight(rest), pivot, right.root, right.blackHeight, result);
   }
 
-  @Override
-  public void insert(T data) throws NullPointerException {
-    if (data == null) {
-      throw new NullPointerException("Data is null.");
+  /**
+   * Joins the fragments rooted at left and right, using pivot as the node between them, and stores
+   * the combined fragment in result. Every value in left must be smaller than or equal to pivot,
+   * and pivot must be smaller than or equal to every value in right. The shorter fragment is hung
+   * off the spine of the taller one at the point where their black heights match, and the red
+   * property is repaired from there, so this takes time proportional to the difference of the two
+   * black heights.
+   * 
+   * @param left        root of the fragment with the smaller values, or null
+   * @param leftHeight  black height of that fragment
+   * @param pivot       a single detached node
+   * @param right       root of the fragment with the larger values, or null
+   * @param rightHeight black height of that fragment
+   * @param result      receives the joined fragment
+   */
+  private void join(RBTNode<T> left, int leftHeight, RBTNode<T> pivot, RBTNode<T> right,
+      int rightHeight, Fragment<T> result) {
+    // with black roots, every red node on a spine has a black node below it
+    if (left != null && left.isRed) {
+      left.isRed = false;
+      leftHeight++;
+    }
+    if (right != null && right.isRed) {
+      right.isRed = false;
+      rightHeight++;
     }
 
-    RBTNode<T> node = new RBTNode<>(data);
-    node.isRed = true;
-    if (root == null) {
-      root = node;
+    if (leftHeight == rightHeight) {
+      attach(pivot, left, right);
+      pivot.isRed = false;
+      result.set(pivot, leftHeight + 1);
+      return;
+    }
+
+    boolean leftIsTaller = leftHeight > rightHeight;
+    RBTNode<T> tall = leftIsTaller ? left : right;
+    int targetHeight = leftIsTaller ? rightHeight : leftHeight;
+
+    // walk down the facing spine of the taller fragment to the first black node (or null) whose
+    // black height matches the shorter fragment
+    RBTNode<T> above = null;
+    RBTNode<T> node = tall;
+    int height = leftIsTaller ? leftHeight : rightHeight;
+    while (height > targetHeight || isRed(node)) {
+      if (!node.isRed) {
+        height--;
+      }
+      above = node;
+      node = leftIsTaller ? node.childRight() : node.childLeft();
+    }
+
+    // pivot takes node's place, with node and the shorter fragment as its children
+    if (leftIsTaller) {
+      attach(pivot, node, right);
+      above.setChildRight(pivot);
     } else {
-      super.insertHelper(node, root);
-      ensureRedProperty(node);
+      attach(pivot, left, node);
+      above.setChildLeft(pivot);
+    }
+    pivot.setParent(above);
+    pivot.isRed = true;
+    int added = pivot.size - BinaryTreeNode.sizeOf(node);
+    for (BinaryTreeNode<T> ancestor = above; ancestor != null; ancestor = ancestor.parent()) {
+      ancestor.size += added;
     }
 
-    // ensure that the root node is always black
-    ((RBTNode<T>) this.root).isRed = false;
+    // the red pivot may sit below a red node, which is repaired like an insert
+    RBTNode<T> joined = repairFragment(tall, () -> ensureRedProperty(pivot));
+    int joinedHeight = leftIsTaller ? leftHeight : rightHeight;
+    if (joined.isRed) {
+      joined.isRed = false;
+      joinedHeight++;
+    }
+    result.set(joined, joinedHeight);
+  }
+
+  /**
+   * Merges the fragments rooted at a and b into result, keeping every value of both. The root of a
+   * splits b, and the two halves are merged with a's subtrees recursively.
+   */
+  private void union(RBTNode<T> a, int aHeight, RBTNode<T> b, int bHeight, Fragment<T> result) {
+    if (a == null) {
+      result.set(b, bHeight);
+      return;
+    }
+    if (b == null) {
+      result.set(a, aHeight);
+      return;
+    }
+
+    RBTNode<T> left = a.childLeft();
+    RBTNode<T> right = a.childRight();
+    int childHeight = aHeight - (a.isRed ? 0 : 1);
+    detach(left);
+    detach(right);
+    a.setChildLeft(null);
+    a.setChildRight(null);
+
+    Fragment<T> less = new Fragment<>(null, 0);
+    Fragment<T> greater = new Fragment<>(null, 0);
+    split(b, bHeight, a.data, false, less, greater);
+    union(left, childHeight, less.root, less.blackHeight, less);
+    union(right, childHeight, greater.root, greater.blackHeight, greater);
+    join(less.root, less.blackHeight, a, greater.root, greater.blackHeight, result);
+  }
+
+  /**
+   * Filters the fragment rooted at a by the values in the fragment rooted at b and stores what is
+   * left in result. When keep is true only the values of a that equal some value of b are kept,
+   * otherwise only those that do not. The root of b splits a into the values below, equal to and
+   * above it; the outer parts are filtered by b's subtrees recursively.
+   */
+  private void filter(RBTNode<T> a, int aHeight, RBTNode<T> b, int bHeight, boolean keep,
+      Fragment<T> result) {
+    if (a == null || b == null) {
+      if (keep) {
+        result.set(null, 0);
+      } else {
+        result.set(a, aHeight);
+      }
+      return;
+    }
+
+    RBTNode<T> left = b.childLeft();
+    RBTNode<T> right = b.childRight();
+    int childHeight = bHeight - (b.isRed ? 0 : 1);
+    detach(left);
+    detach(right);
+
+    Fragment<T> less = new Fragment<>(null, 0);
+    Fragment<T> equal = new Fragment<>(null, 0);
+    Fragment<T> greater = new Fragment<>(null, 0);
+    split(a, aHeight, b.data, false, less, equal);
+    split(equal.root, equal.blackHeight, b.data, true, equal, greater);
+
+    filter(less.root, less.blackHeight, left, childHeight, keep, less);
+    filter(greater.root, greater.blackHeight, right, childHeight, keep, greater);
+    if (keep) {
+      join(less, equal, less);
+    }
+    join(less, greater, result);
+  }
+
+  /**
+   * Runs repair, which restores the red-black properties of the fragment rooted at top with
+   * removeNode or ensureRedProperty, and returns the fragment's root afterwards. Those methods
+   * rotate nodes and unlink them through the root of this tree, so top stands in as that root
+   * while repair runs, and the tree's own root is put back after. This way the rotations stay
+   * within the fragment and subclass overrides of the repair methods still apply.
+   */
+  private RBTNode<T> repairFragment(RBTNode<T> top, Runnable repair) {
+    BinaryTreeNode<T> treeRoot = root;
+    root = top;
+    repair.run();
+    RBTNode<T> fragmentRoot = (RBTNode<T>) root;
+    root = treeRoot;
+    return fragmentRoot;
+  }
+
+  /**
+   * Makes left and right (either may be null) the children of node and updates node's size.
+   */
+  private static <T> void attach(RBTNode<T> node, RBTNode<T> left, RBTNode<T> right) {
+    node.setChildLeft(left);
+    node.setChildRight(right);
+    if (left != null) {
+      left.setParent(node);
+    }
+    if (right != null) {
+      right.setParent(node);
+    }
+    node.updateSize();
+  }
+
+  /**
+   * Cuts the parent reference of node, if node is not null, so that it can become a fragment root.
+   */
+  private static <T> void detach(RBTNode<T> node) {
+    if (node != null) {
+      node.setParent(null);
+    }
   }
 
   /**
@@ -251,4 +1423,485 @@ public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
     assertTrue(((RBTNode<Character>) rbt.root.childRight().childRight().childRight()).isRed
         && ((RBTNode<Character>) rbt.root.childRight().childRight().childRight()).data == 'T');
   }
+
+  /**
+   * Checks every invariant this tree relies on: the root is black, no red node has a red child,
+   * every path from the root down to a null child passes through the same number of black nodes,
+   * values are in sorted order, parent references match child references, and the subtree size
+   * stored in each node is correct. Intended for use by tests.
+   * 
+   * @return true if all of those properties hold, false otherwise
+   */
+  protected boolean satisfiesRedBlackProperties() {
+    if (root == null) {
+      return true;
+    }
+    return !((RBTNode<T>) root).isRed && root.parent() == null
+        && checkSubtree((RBTNode<T>) root, null, null) >= 0;
+  }
+
+  /**
+   * Recursively checks the subtree rooted at node for the properties described in
+   * satisfiesRedBlackProperties, where every value must lie between min and max (null for
+   * unbounded). Returns the black height of the subtree, or -1 if any property is violated.
+   */
+  private int checkSubtree(RBTNode<T> node, T min, T max) {
+    if (node == null) {
+      return 0;
+    }
+    if ((min != null && node.data.compareTo(min) < 0)
+        || (max != null && node.data.compareTo(max) > 0)) {
+      return -1;
+    }
+    RBTNode<T> left = node.childLeft();
+    RBTNode<T> right = node.childRight();
+    if ((left != null && left.parent() != node) || (right != null && right.parent() != node)) {
+      return -1;
+    }
+    if (node.isRed && ((left != null && left.isRed) || (right != null && right.isRed))) {
+      return -1;
+    }
+    if (node.size != node.multiplicity() + BinaryTreeNode.sizeOf(left)
+        + BinaryTreeNode.sizeOf(right)) {
+      return -1;
+    }
+    int leftHeight = checkSubtree(left, min, node.data);
+    int rightHeight = checkSubtree(right, node.data, max);
+    if (leftHeight < 0 || leftHeight != rightHeight) {
+      return -1;
+    }
+    return leftHeight + (node.isRed ? 0 : 1);
+  }
+
+  /**
+   * Tests that the subtree sizes stay correct through inserts that trigger every repair case, and
+   * that size() reports the number of inserted values including duplicates.
+   */
+  @Test
+  public void Test5() {
+    RedBlackTree<Integer> rbt = new RedBlackTree<>();
+    assertTrue(rbt.size() == 0);
+
+    // ascending, descending and zig-zag inserts cause both rotation directions and recolorings
+    for (int i = 0; i < 50; i++) {
+      rbt.insert(i);
+    }
+    for (int i = 100; i > 50; i--) {
+      rbt.insert(i);
+    }
+    for (int i = 0; i < 20; i++) {
+      rbt.insert(i % 2 == 0 ? 75 - i : 25 + i);
+    }
+    // duplicates are counted separately
+    rbt.insert(10);
+    rbt.insert(10);
+
+    assertTrue(rbt.size() == 122);
+    assertTrue(rbt.satisfiesRedBlackProperties());
+
+    rbt.clear();
+    assertTrue(rbt.size() == 0);
+  }
+
+  /**
+   * Tests select, rank and countInRange against a tree with duplicates, including ranges that are
+   * unbounded or empty.
+   */
+  @Test
+  public void Test6() {
+    RedBlackTree<Integer> rbt = new RedBlackTree<>();
+    // stores 0, 2, 4, ..., 98 plus a second copy of 40
+    for (int i = 98; i >= 0; i -= 2) {
+      rbt.insert(i);
+    }
+    rbt.insert(40);
+
+    assertTrue(rbt.select(0) == 0);
+    assertTrue(rbt.select(20) == 40 && rbt.select(21) == 40 && rbt.select(22) == 42);
+    assertTrue(rbt.select(50) == 98);
+    assertThrows(IndexOutOfBoundsException.class, () -> rbt.select(51));
+    assertThrows(IndexOutOfBoundsException.class, () -> rbt.select(-1));
+
+    assertTrue(rbt.rank(0) == 0);
+    assertTrue(rbt.rank(40) == 20 && rbt.rank(41) == 22);
+    assertTrue(rbt.rank(1000) == 51);
+
+    assertTrue(rbt.countInRange(40, 40) == 2);
+    assertTrue(rbt.countInRange(10, 20) == 6);
+    assertTrue(rbt.countInRange(null, 9) == 5);
+    assertTrue(rbt.countInRange(90, null) == 5);
+    assertTrue(rbt.countInRange(null, null) == 51);
+    assertTrue(rbt.countInRange(21, 21) == 0 && rbt.countInRange(30, 10) == 0);
+  }
+
+  /**
+   * Tests that the red property repair keeps every red-black tree invariant intact across a long
+   * sequence of sorted, reverse sorted and pseudo-random inserts, and that the tree stays within
+   * the height bound of a red-black tree.
+   */
+  @Test
+  public void Test7() {
+    RedBlackTree<Integer> rbt = new RedBlackTree<>();
+    for (int i = 0; i < 2000; i++) {
+      rbt.insert(i);
+    }
+    for (int i = 0; i < 2000; i++) {
+      rbt.insert(-i);
+    }
+    // multiplying by a number coprime to 4093 visits the values in a scrambled order
+    for (int i = 0; i < 4093; i++) {
+      rbt.insert((i * 1021) % 4093);
+    }
+    assertTrue(rbt.size() == 8093);
+    assertTrue(rbt.satisfiesRedBlackProperties());
+    assertTrue(height(rbt.root) <= 2 * (32 - Integer.numberOfLeadingZeros(rbt.size() + 1)));
+  }
+
+  /**
+   * Returns the number of nodes on the longest path from node down to a leaf.
+   */
+  private static int height(BinaryTreeNode<?> node) {
+    if (node == null) {
+      return 0;
+    }
+    return 1 + Math.max(height(node.childLeft()), height(node.childRight()));
+  }
+
+  /**
+   * Tests remove, removeFirst and removeLast, checking the red-black properties after every single
+   * removal so that each repair case gets exercised on a valid tree, and that removing a node with
+   * two children relinks its successor instead of copying values between nodes.
+   */
+  @Test
+  public void Test8() {
+    RedBlackTree<Integer> rbt = new RedBlackTree<>();
+    for (int i = 0; i < 1000; i++) {
+      rbt.insert((i * 379) % 1000);
+    }
+    rbt.insert(500);
+
+    assertTrue(!rbt.remove(1000) && rbt.size() == 1001);
+    assertTrue(rbt.remove(500) && rbt.contains(500) && rbt.remove(500) && !rbt.contains(500));
+
+    // removing a node with two children moves its successor node into its place, and every node
+    // keeps the value it was created with
+    RBTNode<Integer> top = (RBTNode<Integer>) rbt.root;
+    RBTNode<Integer> successor = top.childRight();
+    while (successor.childLeft() != null) {
+      successor = successor.childLeft();
+    }
+    int successorValue = successor.data;
+    int topValue = top.data;
+    assertTrue(rbt.remove(topValue) && rbt.root == successor && successor.data == successorValue);
+    assertTrue(top.data == topValue && top.parent() == null && top.childRight() == null);
+    assertTrue(rbt.satisfiesRedBlackProperties());
+    rbt.insert(topValue);
+
+    // removes the values in a different scrambled order than they were inserted in
+    for (int i = 0; i < 1000; i++) {
+      int value = (i * 211) % 1000;
+      if (value != 500) {
+        assertTrue(rbt.remove(value));
+        assertTrue(!rbt.contains(value));
+        assertTrue(rbt.satisfiesRedBlackProperties());
+      }
+      if (i == 400) {
+        int smallest = rbt.select(0);
+        int largest = rbt.select(rbt.size() - 1);
+        assertTrue(rbt.removeFirst() == smallest && rbt.removeLast() == largest);
+        rbt.insert(smallest);
+        rbt.insert(largest);
+      }
+    }
+    assertTrue(rbt.isEmpty() && rbt.size() == 0);
+    assertThrows(NoSuchElementException.class, () -> rbt.removeFirst());
+    assertThrows(NoSuchElementException.class, () -> rbt.removeLast());
+  }
+
+  /**
+   * Tests removeRange with bounded, unbounded, empty and duplicate-heavy ranges, checking that the
+   * tree that is left over is a valid red-black tree holding exactly the values outside the range.
+   */
+  @Test
+  public void Test9() {
+    for (int n : new int[] {1, 2, 7, 100, 777}) {
+      int[][] ranges = {{0, n / 2}, {n / 3, 2 * n / 3}, {n / 2, n}, {-5, -1}, {n + 1, n + 9},
+          {n / 2, n / 2}, {n / 2, n / 4}};
+      for (int[] range : ranges) {
+        RedBlackTree<Integer> rbt = new RedBlackTree<>();
+        for (int i = 0; i < n; i++) {
+          rbt.insert(i);
+          rbt.insert(i);
+        }
+        int expected = rbt.countInRange(range[0], range[1]);
+        assertTrue(rbt.removeRange(range[0], range[1]) == expected);
+        assertTrue(rbt.size() == 2 * n - expected);
+        assertTrue(rbt.countInRange(range[0], range[1]) == 0);
+        assertTrue(rbt.satisfiesRedBlackProperties());
+      }
+
+      RedBlackTree<Integer> rbt = new RedBlackTree<>();
+      for (int i = 0; i < n; i++) {
+        rbt.insert(i);
+      }
+      assertTrue(rbt.removeRange(null, n / 2) == n / 2 + 1 && rbt.satisfiesRedBlackProperties());
+      assertTrue(rbt.removeRange(n - 1, null) == (n - 1 > n / 2 ? 1 : 0));
+      int remaining = rbt.size();
+      assertTrue(rbt.removeRange(null, null) == remaining && rbt.isEmpty());
+    }
+  }
+
+  /**
+   * Tests that fromSorted and buildFrom produce valid red-black trees of every size up to a few
+   * hundred, that buildFrom sorts unsorted input first, and that out of order input to fromSorted
+   * is rejected.
+   */
+  @Test
+  public void Test10() {
+    for (int n = 0; n <= 300; n++) {
+      List<Integer> values = new ArrayList<>();
+      for (int i = 0; i < n; i++) {
+        values.add(i / 2);
+      }
+      RedBlackTree<Integer> rbt = RedBlackTree.fromSorted(values.iterator(), n);
+      assertTrue(rbt.size() == n && rbt.satisfiesRedBlackProperties());
+      for (int i = 0; i < n; i++) {
+        assertTrue(rbt.select(i) == i / 2);
+      }
+    }
+
+    List<Integer> unsorted = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      unsorted.add((i * 37) % 100);
+    }
+    RedBlackTree<Integer> rbt = RedBlackTree.buildFrom(unsorted);
+    assertTrue(rbt.size() == 100 && rbt.satisfiesRedBlackProperties());
+    assertTrue(rbt.select(0) == 0 && rbt.select(99) == 99 && unsorted.get(1) == 37);
+
+    // the tree keeps working normally after a bulk build
+    rbt.insert(50);
+    assertTrue(rbt.remove(0) && rbt.size() == 100 && rbt.satisfiesRedBlackProperties());
+
+    assertThrows(IllegalArgumentException.class,
+        () -> RedBlackTree.fromSorted(unsorted.iterator(), 100));
+    assertThrows(NoSuchElementException.class,
+        () -> RedBlackTree.fromSorted(Arrays.asList(1, 2, 3).iterator(), 4));
+  }
+
+  /**
+   * Tests insertAll on an empty tree, with a batch larger than the tree (the merge and rebuild
+   * path), and with a batch smaller than the tree (the finger insert path), including duplicates
+   * and values that land before, between and after the existing ones.
+   */
+  @Test
+  public void Test11() {
+    RedBlackTree<Integer> rbt = new RedBlackTree<>();
+    rbt.insertAll(new ArrayList<Integer>());
+    assertTrue(rbt.isEmpty());
+
+    List<Integer> batch = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      batch.add((i * 7) % 500 * 2);
+    }
+    rbt.insertAll(batch);
+    assertTrue(rbt.size() == 500 && rbt.satisfiesRedBlackProperties());
+
+    // larger than the tree: merged and rebuilt
+    batch.clear();
+    for (int i = 0; i < 600; i++) {
+      batch.add(i % 2 == 0 ? i : 1001 - i);
+    }
+    rbt.insertAll(batch);
+    assertTrue(rbt.size() == 1100 && rbt.satisfiesRedBlackProperties());
+
+    // smaller than the tree: inserted one by one from a finger
+    batch.clear();
+    for (int i = 0; i < 300; i++) {
+      batch.add((i * 13) % 1200 - 50);
+    }
+    batch.add(400);
+    batch.add(400);
+    rbt.insertAll(batch);
+    assertTrue(rbt.size() == 1402 && rbt.satisfiesRedBlackProperties());
+    for (int i = 1; i < rbt.size(); i++) {
+      assertTrue(rbt.select(i - 1) <= rbt.select(i));
+    }
+    assertTrue(rbt.countInRange(400, 400) == 4);
+
+    // a run of values that all land in one small subtree, so most ancestor sizes are only fixed
+    // when the batch is done
+    batch.clear();
+    for (int i = 0; i < 200; i++) {
+      batch.add(600 + i % 10);
+    }
+    int before = rbt.countInRange(600, 609);
+    rbt.insertAll(batch);
+    assertTrue(rbt.size() == 1602 && rbt.satisfiesRedBlackProperties());
+    assertTrue(rbt.countInRange(600, 609) == before + 200 && rbt.select(rbt.rank(605)) == 605);
+
+    List<Integer> withNull = new ArrayList<>(Arrays.asList(1, null));
+    assertThrows(NullPointerException.class, () -> rbt.insertAll(withNull));
+    assertTrue(rbt.size() == 1602);
+  }
+
+  /**
+   * Tests that buildFromParallel produces a valid tree with exactly the same shape and colors as
+   * the sequential buildFrom, both for a small input and for one large enough to be split across
+   * several fork/join tasks.
+   */
+  @Test
+  public void Test12() {
+    for (int n : new int[] {0, 1, 5, 1000, 100000}) {
+      List<Integer> values = new ArrayList<>();
+      for (int i = 0; i < n; i++) {
+        values.add((int) ((i * 2654435761L) % 50000));
+      }
+      RedBlackTree<Integer> parallel = RedBlackTree.buildFromParallel(values);
+      RedBlackTree<Integer> sequential = RedBlackTree.buildFrom(values);
+      assertTrue(parallel.size() == n && parallel.satisfiesRedBlackProperties());
+      if (n > 0) {
+        assertTrue(
+            parallel.root.toLevelOrderString().equals(sequential.root.toLevelOrderString()));
+      }
+    }
+  }
+
+  /**
+   * Tests split and join: every split point of a tree with duplicates must leave two valid trees
+   * on the correct sides of the key, and joining them back around a pivot must restore all values.
+   * Also checks that the fragments are repaired with the tree's own repair methods.
+   */
+  @Test
+  public void Test13() {
+    for (int key = -1; key <= 41; key++) {
+      RedBlackTree<Integer> lower = new RedBlackTree<>();
+      for (int i = 0; i < 40; i++) {
+        lower.insert(i / 2);
+      }
+      RedBlackTree<Integer> upper = lower.split(key / 2);
+      assertTrue(lower.satisfiesRedBlackProperties() && upper.satisfiesRedBlackProperties());
+      assertTrue(lower.size() == Math.max(0, Math.min(40, 2 * (key / 2))));
+      assertTrue(lower.size() + upper.size() == 40);
+      assertTrue(lower.countInRange(key / 2, null) == 0);
+      assertTrue(upper.countInRange(null, key / 2 - 1) == 0);
+
+      int pivot = Math.max(0, Math.min(19, key / 2));
+      RedBlackTree<Integer> joined = RedBlackTree.join(lower, pivot, upper);
+      assertTrue(joined.size() == 41 && joined.satisfiesRedBlackProperties());
+      assertTrue(lower.isEmpty() && upper.isEmpty());
+      assertTrue(joined.countInRange(pivot, pivot) == 3);
+    }
+
+    // trees of very different heights
+    RedBlackTree<Integer> small = new RedBlackTree<>();
+    small.insert(-1);
+    RedBlackTree<Integer> big = new RedBlackTree<>();
+    for (int i = 0; i < 1000; i++) {
+      big.insert(i);
+    }
+    RedBlackTree<Integer> joined = RedBlackTree.join(small, 0, big);
+    assertTrue(joined.size() == 1002 && joined.satisfiesRedBlackProperties());
+
+    RedBlackTree<Integer> left = new RedBlackTree<>();
+    left.insert(5);
+    RedBlackTree<Integer> right = new RedBlackTree<>();
+    right.insert(3);
+    assertThrows(IllegalArgumentException.class, () -> RedBlackTree.join(left, 4, right));
+
+    // split and join repair their fragments through this tree's own, overridable, repair methods
+    AtomicInteger repairs = new AtomicInteger();
+    RedBlackTree<Integer> counting = new RedBlackTree<>() {
+      @Override
+      protected void ensureRedProperty(RBTNode<Integer> newNode) {
+        repairs.incrementAndGet();
+        super.ensureRedProperty(newNode);
+      }
+    };
+    for (int i = 0; i < 100; i++) {
+      counting.insert(i);
+    }
+    repairs.set(0);
+    assertTrue(counting.removeRange(40, 59) == 20 && counting.size() == 80);
+    assertTrue(repairs.get() > 0 && counting.satisfiesRedBlackProperties());
+  }
+
+  /**
+   * Tests union, intersection and difference against the expected counts of every value, with
+   * duplicates on both sides and trees of different sizes.
+   */
+  @Test
+  public void Test14() {
+    int[][] sizes = {{0, 10}, {10, 0}, {5, 500}, {500, 5}, {300, 300}};
+    for (int[] size : sizes) {
+      for (int operation = 0; operation < 3; operation++) {
+        RedBlackTree<Integer> a = new RedBlackTree<>();
+        RedBlackTree<Integer> b = new RedBlackTree<>();
+        int[] countA = new int[100];
+        int[] countB = new int[100];
+        for (int i = 0; i < size[0]; i++) {
+          int value = (i * 17) % 100;
+          a.insert(value);
+          countA[value]++;
+        }
+        for (int i = 0; i < size[1]; i++) {
+          int value = (i * 31 + 7) % 60;
+          b.insert(value);
+          countB[value]++;
+        }
+
+        if (operation == 0) {
+          a.union(b);
+        } else if (operation == 1) {
+          a.intersection(b);
+        } else {
+          a.difference(b);
+        }
+        assertTrue(a.satisfiesRedBlackProperties() && b.isEmpty());
+        for (int value = 0; value < 100; value++) {
+          int expected = (operation == 0) ? countA[value] + countB[value]
+              : (operation == 1) == (countB[value] > 0) ? countA[value] : 0;
+          assertTrue(a.countInRange(value, value) == expected);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that insertAll (both paths) and the sequential and parallel bulk builders create every
+   * node through createNode, so that subclasses get their own kind of node, and that union and join
+   * do not create nodes of their own beyond join's pivot.
+   */
+  @Test
+  public void Test15() {
+    AtomicInteger created = new AtomicInteger();
+    RedBlackTree<Integer> rbt = new RedBlackTree<>() {
+      @Override
+      protected RBTNode<Integer> createNode(Integer data) {
+        created.incrementAndGet();
+        return super.createNode(data);
+      }
+    };
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      values.add((i * 7919) % 20000);
+    }
+
+    rbt.insertAll(values);
+    assertTrue(created.get() == 20000);
+    rbt.insertAll(values.subList(0, 100));
+    assertTrue(created.get() == 20100);
+    Integer[] sorted = values.toArray(new Integer[0]);
+    Arrays.sort(sorted);
+    rbt.buildFromSortedArray(sorted);
+    assertTrue(created.get() == 40100 && rbt.size() == 20000);
+    rbt.buildFromSorted(sortedView(values).iterator(), 20000);
+    assertTrue(created.get() == 60100 && rbt.satisfiesRedBlackProperties());
+
+    // union creates no nodes, and join creates one for the pivot only
+    rbt.union(RedBlackTree.fromSorted(List.of(5, 20000).iterator(), 2));
+    assertTrue(created.get() == 60100 && rbt.size() == 20002);
+    RedBlackTree<Integer> larger = RedBlackTree.fromSorted(List.of(30000, 30001).iterator(), 2);
+    RedBlackTree<Integer> joined = RedBlackTree.join(rbt, 25000, larger);
+    assertTrue(created.get() == 60101 && joined.size() == 20005);
+  }
 }
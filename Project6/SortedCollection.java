@@ -1,3 +1,5 @@
+import java.util.Collection;
+
 /**
  * This interface defines an ADT for data structures that support storing a collection of comparable
  * values in their natural ordering.
@@ -13,6 +15,20 @@ public interface SortedCollection<T extends Comparable<T>> {
    */
   public void insert(T data) throws NullPointerException;
 
+  /**
+   * Inserts every value in data into the sorted collection. Implementations may override this to
+   * insert a large batch more efficiently than one value at a time.
+   * 
+   * @param data the values being inserted
+   * @throws NullPointerException if data or any of its values is null, we do not allow null values
+   *                              to be stored within a SortedCollection
+   */
+  public default void insertAll(Collection<? extends T> data) throws NullPointerException {
+    for (T value : data) {
+      insert(value);
+    }
+  }
+
   /**
    * Check whether data is stored in the tree.
    * 
@@ -0,0 +1,252 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This class represents a splay tree: a binary search tree that keeps no balance information, but
+ * moves every value it inserts or looks up to the root with a series of rotations. Values that
+ * are accessed often therefore stay near the top of the tree, and a run of operations costs
+ * O(log n) amortized time per operation, or less when the accesses are skewed towards a few hot
+ * values.
+ *
+ * Because contains reorganizes the tree, it is a write operation here: a SplayTree must not be
+ * read by several threads at once without outside locking, and iterators must not be used after
+ * contains is called. Like in BinarySearchTree, duplicate values are allowed.
+ */
+public class SplayTree<T extends Comparable<T>> extends BSTRotation<T>
+    implements IterableSortedCollection<T> {
+
+  private Comparable<T> maximum = null;
+  private Comparable<T> minimum = null;
+
+  /**
+   * Creates an empty splay tree.
+   */
+  public SplayTree() {
+  }
+
+  /**
+   * Inserts a new data value into the tree, and then splays the new node to the root.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException if data is null
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+
+    BinaryTreeNode<T> node = new BinaryTreeNode<>(data);
+    if (root == null) {
+      root = node;
+    } else {
+      insertHelper(node, root);
+      splay(node);
+    }
+  }
+
+  /**
+   * Check whether data is stored in the tree. The node holding data is splayed to the root, or,
+   * when data is not in the tree, the last node visited on the way down is, so that misses are
+   * paid for by the same rotations as hits.
+   *
+   * @param data the value to check for in the collection
+   * @return true if the collection contains data one or more times, and false otherwise
+   */
+  @Override
+  public boolean contains(Comparable<T> data) {
+    BinaryTreeNode<T> last = null;
+    BinaryTreeNode<T> node = root;
+    while (node != null) {
+      last = node;
+      int compare = data.compareTo(node.getData());
+      if (compare == 0) {
+        splay(node);
+        return true;
+      }
+      node = (compare < 0) ? node.childLeft() : node.childRight();
+    }
+    if (last != null) {
+      splay(last);
+    }
+    return false;
+  }
+
+  /**
+   * Moves node to the root of the tree. While node has a grandparent, it climbs two levels per
+   * step: when node and its parent are children on the same side (zig-zig), the parent is rotated
+   * above the grandparent first and then node above the parent; otherwise (zig-zag) node is
+   * rotated above its parent and then above its old grandparent. A single rotation finishes the
+   * climb when node ends up as a child of the root. rotate keeps the subtree sizes correct.
+   */
+  private void splay(BinaryTreeNode<T> node) {
+    while (node.parent() != null) {
+      BinaryTreeNode<T> up = node.parent();
+      BinaryTreeNode<T> grand = up.parent();
+      if (grand == null) {
+        rotate(node, up);
+      } else if (node.isRightChild() == up.isRightChild()) {
+        rotate(up, grand);
+        rotate(node, up);
+      } else {
+        rotate(node, up);
+        rotate(node, grand);
+      }
+    }
+  }
+
+  /**
+   * Allows setting the start (minimum) value of the iterator. When this method is called, every
+   * iterator created after it will use the minimum set by this method until this method is called
+   * again to set a new minimum value.
+   *
+   * @param min the minimum for iterators created for this tree, or null for no minimum
+   */
+  @Override
+  public void setIteratorMin(Comparable<T> min) {
+    this.minimum = min;
+  }
+
+  /**
+   * Allows setting the stop (maximum) value of the iterator. When this method is called, every
+   * iterator created after it will use the maximum set by this method until this method is called
+   * again to set a new maximum value.
+   *
+   * @param max the maximum for iterators created for this tree, or null for no maximum
+   */
+  @Override
+  public void setIteratorMax(Comparable<T> max) {
+    this.maximum = max;
+  }
+
+  /**
+   * Returns an iterator over the values stored in this tree, between the minimum and maximum set
+   * by setIteratorMin and setIteratorMax. Iterating does not splay.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(this.minimum, this.maximum);
+  }
+
+  /**
+   * Returns an iterator over the values between min and max (inclusive) stored in this tree. A
+   * null min or max leaves that end of the range unbounded. Iterating does not splay.
+   *
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return an iterator over the values in that range
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    return new IterableRedBlackTree.RBTIterator<>(this.root, min, max);
+  }
+
+  /**
+   * Returns the number of nodes in the subtree rooted at node, or -1 if a node in it holds a value
+   * outside of [low, high] (a null bound is unbounded), stores the wrong subtree size, or is not
+   * linked back to its parent.
+   */
+  private int checkSubtree(BinaryTreeNode<T> node, T low, T high) {
+    if (node == null) {
+      return 0;
+    }
+    if (low != null && node.getData().compareTo(low) < 0
+        || high != null && node.getData().compareTo(high) > 0
+        || node.childLeft() != null && node.childLeft().parent() != node
+        || node.childRight() != null && node.childRight().parent() != node) {
+      return -1;
+    }
+    int leftSize = checkSubtree(node.childLeft(), low, node.getData());
+    int rightSize = checkSubtree(node.childRight(), node.getData(), high);
+    if (leftSize < 0 || rightSize < 0 || node.subtreeSize() != 1 + leftSize + rightSize) {
+      return -1;
+    }
+    return 1 + leftSize + rightSize;
+  }
+
+  /**
+   * Tests that inserted and looked up values are splayed to the root, including on a miss, and
+   * tests duplicates, range iteration and clear.
+   */
+  @Test
+  public void Test1() {
+    SplayTree<Integer> tree = new SplayTree<>();
+    assertThrows(NullPointerException.class, () -> tree.insert(null));
+    assertTrue(tree.isEmpty() && !tree.contains(3) && !tree.iterator().hasNext());
+    for (int value : new int[] {50, 20, 80, 10, 30, 70, 90, 30}) {
+      tree.insert(value);
+      assertTrue(tree.root.getData() == value);
+    }
+    assertEquals(8, tree.size());
+    assertEquals(8, tree.checkSubtree(tree.root, null, null));
+
+    assertTrue(tree.contains(10));
+    assertTrue(tree.root.getData() == 10);
+    assertTrue(tree.contains(90) && tree.root.getData() == 90);
+    assertFalse(tree.contains(75));
+    int last = tree.root.getData();
+    assertTrue(last == 70 || last == 80);
+    assertEquals(8, tree.checkSubtree(tree.root, null, null));
+
+    assertEquals(List.of(10, 20, 30, 30, 50, 70, 80, 90),
+        IterableRedBlackTree.drain(tree.iterator()));
+    assertEquals(List.of(30, 30, 50), IterableRedBlackTree.drain(tree.iterator(25, 60)));
+    tree.setIteratorMin(75);
+    assertEquals(List.of(80, 90), IterableRedBlackTree.drain(tree.iterator()));
+    assertThrows(NoSuchElementException.class, () -> tree.iterator(95, null).next());
+
+    tree.clear();
+    assertTrue(tree.isEmpty() && tree.size() == 0 && !tree.contains(50));
+  }
+
+  /**
+   * Tests the amortized bounds that splaying gives, by counting rotations: looking up every value
+   * in ascending order takes O(n) rotations in total, and lookups that keep returning to a few hot
+   * values cost far less than lookups spread over the whole tree. Also tests that a long sorted
+   * run, which a splay tree turns into a path, is folded back up without running out of stack.
+   */
+  @Test
+  public void Test2() {
+    long[] rotations = new long[1];
+    SplayTree<Integer> tree = new SplayTree<>() {
+      @Override
+      protected void rotate(BinaryTreeNode<Integer> child, BinaryTreeNode<Integer> parent) {
+        rotations[0]++;
+        super.rotate(child, parent);
+      }
+    };
+    int n = 10000;
+    for (int i = 0; i < n; i++) {
+      tree.insert((int) ((i * 7919L) % n));
+    }
+    rotations[0] = 0;
+    for (int i = 0; i < n; i++) {
+      assertTrue(tree.contains(i));
+    }
+    assertTrue(rotations[0] <= 4L * n);
+
+    rotations[0] = 0;
+    for (int i = 0; i < n; i++) {
+      tree.contains((int) ((i * 7919L) % n));
+    }
+    long spread = rotations[0];
+    rotations[0] = 0;
+    for (int i = 0; i < n; i++) {
+      tree.contains(i % 8);
+    }
+    assertTrue(5 * rotations[0] < spread);
+    assertEquals(n, tree.checkSubtree(tree.root, null, null));
+
+    SplayTree<Integer> sorted = new SplayTree<>();
+    for (int i = 0; i < 100000; i++) {
+      sorted.insert(i);
+    }
+    assertTrue(sorted.root.getData() == 99999 && sorted.root.childRight() == null);
+    assertTrue(sorted.contains(0) && sorted.root.getData() == 0);
+    assertTrue(sorted.contains(50000) && !sorted.contains(100000));
+    assertEquals(100000, sorted.size());
+  }
+}
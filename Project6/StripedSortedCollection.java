@@ -0,0 +1,457 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * This class represents a sorted collection that is split into several independent red-black
+ * trees, called shards, each guarded by its own lock. Threads inserting into different shards do
+ * not contend with each other. Values are routed to a shard either by key range, using a sorted
+ * list of splitters, or by hash code. In range mode the shards hold disjoint, ordered ranges of
+ * values, so a range query only visits the shards that overlap it; in hash mode every shard can
+ * hold any value and iterators merge the shards back into ascending order.
+ *
+ * Inserts, lookups and size() are safe to call from any number of threads. Iterators walk the
+ * shards directly and must not be used while other threads are inserting.
+ */
+public class StripedSortedCollection<T extends Comparable<T>>
+    implements IterableSortedCollection<T> {
+
+  // the shards; each shard is also the lock guarding it
+  private final List<IterableRedBlackTree<T>> shards = new ArrayList<>();
+  // shard i holds the values greater than splitter i-1 and at most splitter i; null in hash mode
+  private List<T> splitters = null;
+
+  private Comparable<T> maximum = null;
+  private Comparable<T> minimum = null;
+
+  /**
+   * Creates a collection without shards. Every factory method creates the shards exactly once
+   * afterwards, so that none are built only to be thrown away.
+   */
+  private StripedSortedCollection() {
+  }
+
+  /**
+   * Creates a collection that routes values by hash code to one shard per available processor.
+   *
+   * @return the new, empty collection
+   */
+  public static <T extends Comparable<T>> StripedSortedCollection<T> byHash() {
+    return byHash(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a collection that routes values to the given number of shards by hash code. Lookups
+   * check every shard, so values that compare equal do not need to have equal hash codes.
+   *
+   * @param shardCount the number of shards
+   * @return the new, empty collection
+   * @throws IllegalArgumentException if shardCount is not positive
+   */
+  public static <T extends Comparable<T>> StripedSortedCollection<T> byHash(int shardCount)
+      throws IllegalArgumentException {
+    if (shardCount <= 0) {
+      throw new IllegalArgumentException("Shard count must be positive.");
+    }
+    StripedSortedCollection<T> collection = new StripedSortedCollection<>();
+    collection.createShards(shardCount);
+    return collection;
+  }
+
+  /**
+   * Creates a collection that routes values to shards by key range. With k splitters there are
+   * k+1 shards: the first holds the values up to and including the first splitter, each of the
+   * following ones the values above the previous splitter and up to and including the next, and
+   * the last one the values above the last splitter.
+   *
+   * @param splitters the boundaries between shards, in strictly ascending order
+   * @return the new, empty collection
+   * @throws IllegalArgumentException if splitters contains null or is not strictly ascending
+   */
+  public static <T extends Comparable<T>> StripedSortedCollection<T> byRange(List<T> splitters)
+      throws IllegalArgumentException {
+    for (int i = 0; i < splitters.size(); i++) {
+      if (splitters.get(i) == null
+          || i > 0 && splitters.get(i - 1).compareTo(splitters.get(i)) >= 0) {
+        throw new IllegalArgumentException("Splitters must be non-null and strictly ascending.");
+      }
+    }
+    StripedSortedCollection<T> collection = new StripedSortedCollection<>();
+    collection.splitters = new ArrayList<>(splitters);
+    collection.createShards(splitters.size() + 1);
+    return collection;
+  }
+
+  /**
+   * Adds count new, empty shards to this collection, which has none yet.
+   */
+  private void createShards(int count) {
+    for (int i = 0; i < count; i++) {
+      shards.add(new IterableRedBlackTree<>());
+    }
+  }
+
+  /**
+   * Returns the index of the shard whose range includes key, which is the number of splitters
+   * smaller than key. Only used in range mode.
+   */
+  private int shardFor(Comparable<T> key) {
+    int low = 0;
+    int high = splitters.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (key.compareTo(splitters.get(middle)) > 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Inserts a new data value into the shard it is routed to, holding only that shard's lock.
+   *
+   * @param data the new value being inserted
+   * @throws NullPointerException if data argument is null, we do not allow null values to be stored
+   *                              within a SortedCollection
+   */
+  @Override
+  public void insert(T data) throws NullPointerException {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+    int index;
+    if (splitters != null) {
+      index = shardFor(data);
+    } else {
+      int hash = data.hashCode();
+      index = Math.floorMod(hash ^ (hash >>> 16), shards.size());
+    }
+    IterableRedBlackTree<T> shard = shards.get(index);
+    synchronized (shard) {
+      shard.insert(data);
+    }
+  }
+
+  /**
+   * Check whether data is stored in the collection. In range mode only the shard whose range
+   * includes data is searched; in hash mode every shard is.
+   *
+   * @param data the value to check for in the collection
+   * @return true if the collection contains data one or more times, and false otherwise
+   */
+  @Override
+  public boolean contains(Comparable<T> data) {
+    if (data == null) {
+      throw new NullPointerException("Data is null.");
+    }
+    if (splitters != null) {
+      IterableRedBlackTree<T> shard = shards.get(shardFor(data));
+      synchronized (shard) {
+        return shard.contains(data);
+      }
+    }
+    for (IterableRedBlackTree<T> shard : shards) {
+      synchronized (shard) {
+        if (shard.contains(data)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Counts the number of values in the collection, with each duplicate value being counted
+   * separately within the value returned. While inserts are running each shard is counted at a
+   * slightly different moment.
+   *
+   * @return the number of values in the collection, including duplicates
+   */
+  @Override
+  public int size() {
+    int size = 0;
+    for (IterableRedBlackTree<T> shard : shards) {
+      synchronized (shard) {
+        size += shard.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Checks if the collection is empty.
+   *
+   * @return true if the collection contains 0 values, false otherwise
+   */
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Removes all values and duplicates from the collection.
+   */
+  @Override
+  public void clear() {
+    for (IterableRedBlackTree<T> shard : shards) {
+      synchronized (shard) {
+        shard.clear();
+      }
+    }
+  }
+
+  /**
+   * Allows setting the start (minimum) value of the iterator. When this method is called, every
+   * iterator created after it will use the minimum set by this method until this method is called
+   * again to set a new minimum value.
+   *
+   * @param min the minimum for iterators created for this collection, or null for no minimum
+   */
+  @Override
+  public void setIteratorMin(Comparable<T> min) {
+    this.minimum = min;
+  }
+
+  /**
+   * Allows setting the stop (maximum) value of the iterator. When this method is called, every
+   * iterator created after it will use the maximum set by this method until this method is called
+   * again to set a new maximum value.
+   *
+   * @param max the maximum for iterators created for this collection, or null for no maximum
+   */
+  @Override
+  public void setIteratorMax(Comparable<T> max) {
+    this.maximum = max;
+  }
+
+  /**
+   * Returns an iterator over the values in the collection, using the minimum and maximum set by
+   * setIteratorMin and setIteratorMax.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return iterator(this.minimum, this.maximum);
+  }
+
+  /**
+   * Returns an iterator over the values between min and max (inclusive) in ascending order. A null
+   * min or max leaves that end of the range unbounded. In range mode the iterator only visits the
+   * shards overlapping the range, one after the other. In hash mode it merges the iterators of all
+   * shards, which costs O(log k) per value returned for k shards.
+   *
+   * @param min the smallest value to return, or null for no minimum
+   * @param max the largest value to return, or null for no maximum
+   * @return an iterator over the values in that range
+   */
+  @Override
+  public Iterator<T> iterator(Comparable<T> min, Comparable<T> max) {
+    if (splitters != null) {
+      int first = (min == null) ? 0 : shardFor(min);
+      int last = (max == null) ? shards.size() - 1 : shardFor(max);
+      if (first > last) {
+        // min is greater than max, so no value is in range
+        return Collections.emptyIterator();
+      }
+      return new ConcatenatingIterator<>(shards.subList(first, last + 1), min, max);
+    }
+    List<Iterator<T>> iterators = new ArrayList<>();
+    for (IterableRedBlackTree<T> shard : shards) {
+      iterators.add(shard.iterator(min, max));
+    }
+    return new MergingIterator<>(iterators);
+  }
+
+  /**
+   * Nested class for iterators that return the values of several shards one shard after another.
+   * Used in range mode, where each shard only holds values greater than those in the shards before
+   * it.
+   */
+  private static class ConcatenatingIterator<R extends Comparable<R>> implements Iterator<R> {
+
+    // the shards that are left to visit, and the range of values to return from them
+    private final Iterator<IterableRedBlackTree<R>> shards;
+    private final Comparable<R> min;
+    private final Comparable<R> max;
+    // iterator over the shard currently being visited
+    private Iterator<R> current;
+
+    private ConcatenatingIterator(List<IterableRedBlackTree<R>> shards, Comparable<R> min,
+        Comparable<R> max) {
+      this.shards = shards.iterator();
+      this.min = min;
+      this.max = max;
+      this.current = this.shards.next().iterator(min, max);
+    }
+
+    /**
+     * Returns true if the iterator has another value to return, and false otherwise.
+     */
+    public boolean hasNext() {
+      while (!current.hasNext() && shards.hasNext()) {
+        current = shards.next().iterator(min, max);
+      }
+      return current.hasNext();
+    }
+
+    /**
+     * Returns the next value of the iterator.
+     *
+     * @throws NoSuchElementException if the iterator has no more values to return
+     */
+    public R next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more values in range.");
+      }
+      return current.next();
+    }
+
+  }
+
+  /**
+   * Nested class for iterators that merge several sorted iterators into a single sorted one,
+   * keeping the next value of each in a heap.
+   */
+  private static class MergingIterator<R extends Comparable<R>> implements Iterator<R> {
+
+    /**
+     * The next value of one of the merged iterators, along with that iterator.
+     */
+    private static class Head<R> {
+      private final R data;
+      private final Iterator<R> rest;
+
+      private Head(R data, Iterator<R> rest) {
+        this.data = data;
+        this.rest = rest;
+      }
+    }
+
+    private final PriorityQueue<Head<R>> heap;
+
+    private MergingIterator(List<Iterator<R>> iterators) {
+      this.heap = new PriorityQueue<>(Math.max(1, iterators.size()),
+          (a, b) -> a.data.compareTo(b.data));
+      for (Iterator<R> iterator : iterators) {
+        if (iterator.hasNext()) {
+          heap.add(new Head<>(iterator.next(), iterator));
+        }
+      }
+    }
+
+    /**
+     * Returns true if the iterator has another value to return, and false otherwise.
+     */
+    public boolean hasNext() {
+      return !heap.isEmpty();
+    }
+
+    /**
+     * Returns the next value of the iterator.
+     *
+     * @throws NoSuchElementException if the iterator has no more values to return
+     */
+    public R next() {
+      Head<R> head = heap.poll();
+      if (head == null) {
+        throw new NoSuchElementException("No more values in range.");
+      }
+      if (head.rest.hasNext()) {
+        heap.add(new Head<>(head.rest.next(), head.rest));
+      }
+      return head.data;
+    }
+
+  }
+
+  /**
+   * Tests range mode: routing, lookups, and iteration over a range spanning several shards.
+   */
+  @Test
+  public void Test1() {
+    StripedSortedCollection<Integer> collection =
+        StripedSortedCollection.byRange(List.of(1960, 1980, 2000));
+    assertTrue(collection.isEmpty() && !collection.iterator().hasNext());
+    for (int i = 0; i < 200; i++) {
+      collection.insert(1940 + (i * 37) % 100);
+    }
+    assertTrue(collection.size() == 200 && collection.shards.get(1).size() == 40);
+    assertTrue(collection.contains(1960) && collection.contains(2039));
+    assertFalse(collection.contains(2040));
+
+    List<Integer> values = IterableRedBlackTree.drain(collection.iterator(1975, 1985));
+    assertTrue(values.size() == 22 && values.get(0) == 1975 && values.get(21) == 1985);
+    for (int i = 1; i < values.size(); i++) {
+      assertTrue(values.get(i - 1) <= values.get(i));
+    }
+    assertTrue(IterableRedBlackTree.drain(collection.iterator()).size() == 200);
+    assertTrue(IterableRedBlackTree.drain(collection.iterator(2100, null)).isEmpty());
+    assertTrue(IterableRedBlackTree.drain(collection.iterator(1990, 1950)).isEmpty());
+    assertTrue(IterableRedBlackTree.drain(collection.iterator(1970, 1965)).isEmpty());
+    assertThrows(IllegalArgumentException.class,
+        () -> StripedSortedCollection.byRange(List.of(3, 2)));
+
+    collection.clear();
+    assertTrue(collection.isEmpty() && !collection.contains(1960));
+  }
+
+  /**
+   * Tests hash mode: every copy of a value goes to the same shard, the values spread evenly over
+   * the shards, and iteration merges the shards back into sorted order.
+   */
+  @Test
+  public void Test2() {
+    StripedSortedCollection<Integer> collection = StripedSortedCollection.byHash(5);
+    for (int i = 0; i < 500; i++) {
+      collection.insert((i * 389) % 250);
+    }
+    // small Integers hash to themselves, so shard k holds the values equal to k modulo 5
+    for (int k = 0; k < 5; k++) {
+      List<Integer> shard = IterableRedBlackTree.drain(collection.shards.get(k).iterator());
+      assertTrue(shard.size() == 100);
+      for (int i = 0; i < shard.size(); i++) {
+        assertTrue(shard.get(i) % 5 == k && shard.get(i).equals(shard.get(i - i % 2)));
+      }
+    }
+    List<Integer> merged = IterableRedBlackTree.drain(collection.iterator(10, 14));
+    assertEquals(List.of(10, 10, 11, 11, 12, 12, 13, 13, 14, 14), merged);
+    assertTrue(IterableRedBlackTree.drain(collection.iterator()).size() == 500);
+    assertTrue(!collection.iterator(12, 10).hasNext() && collection.contains(249));
+
+    StripedSortedCollection<Integer> byProcessor = StripedSortedCollection.byHash();
+    assertTrue(byProcessor.shards.size() == Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Tests that inserts from several threads at once are all kept.
+   */
+  @Test
+  public void Test3() throws InterruptedException {
+    StripedSortedCollection<Integer> collection =
+        StripedSortedCollection.byRange(List.of(10000, 20000, 30000));
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int offset = t;
+      threads.add(new Thread(() -> {
+        for (int i = offset; i < 40000; i += 4) {
+          collection.insert(i);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Iterator<Integer> iterator = collection.iterator();
+    for (int i = 0; i < 40000; i++) {
+      assertTrue(iterator.next() == i);
+    }
+    assertFalse(iterator.hasNext());
+  }
+}
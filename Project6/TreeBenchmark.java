@@ -0,0 +1,384 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+/**
+ * This class contains rough benchmarks for the tree implementations in this project. Each
+ * benchmark prints one line per configuration it measures. The numbers are only meant for
+ * comparing implementations on the same machine; they are not a substitute for a proper harness.
+ */
+public class TreeBenchmark {
+
+  // number of values loaded into each tree before measuring
+  private static final int PRELOAD = 1 << 18;
+  // how long each configuration is measured for, in milliseconds
+  private static final long MEASURE_MILLIS = 1000;
+  // number of values inserted, looked up and scanned by the single threaded benchmarks
+  private static final int SCAN_SIZE = 1 << 20;
+
+  // results of the measured work are added here so that the JIT cannot skip computing them
+  private static volatile long sink;
+
+  /**
+   * Measures how the number of contains calls per second grows with the number of reader threads
+   * while one loader thread keeps inserting, for ConcurrentRedBlackTree and for a RedBlackTree
+   * guarded by a single monitor.
+   */
+  public static void benchmarkConcurrentReads() throws InterruptedException {
+    int cores = Runtime.getRuntime().availableProcessors();
+    System.out.println("Concurrent reads with one loader thread (" + cores + " cores)");
+    System.out.println("readers  synchronized ops/s  ConcurrentRedBlackTree ops/s");
+
+    for (int readers = 1; readers <= cores; readers *= 2) {
+      RedBlackTree<Integer> locked = new RedBlackTree<>();
+      ConcurrentRedBlackTree<Integer> concurrent = new ConcurrentRedBlackTree<>();
+      for (int i = 0; i < PRELOAD; i++) {
+        locked.insert(i);
+        concurrent.insert(i);
+      }
+
+      long lockedRate = measureReads(readers, value -> {
+        synchronized (locked) {
+          return locked.contains(value);
+        }
+      }, value -> {
+        synchronized (locked) {
+          locked.insert(value);
+        }
+      });
+      long concurrentRate = measureReads(readers, concurrent::contains, concurrent::insert);
+      System.out.printf("%7d  %18d  %28d%n", readers, lockedRate, concurrentRate);
+    }
+  }
+
+  /**
+   * Runs the given number of reader threads calling lookup on random values, alongside a single
+   * thread calling insert on random values, for MEASURE_MILLIS.
+   *
+   * @return the total number of lookups per second across all reader threads
+   */
+  private static long measureReads(int readers, IntPredicate lookup, IntConsumer insert)
+      throws InterruptedException {
+    AtomicBoolean running = new AtomicBoolean(true);
+    LongAdder lookups = new LongAdder();
+    LongAdder hits = new LongAdder();
+
+    List<Thread> threads = new ArrayList<>();
+    threads.add(new Thread(() -> {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      while (running.get()) {
+        insert.accept(random.nextInt(2 * PRELOAD));
+      }
+    }));
+    for (int t = 0; t < readers; t++) {
+      threads.add(new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long count = 0;
+        long found = 0;
+        while (running.get()) {
+          if (lookup.test(random.nextInt(2 * PRELOAD))) {
+            found++;
+          }
+          count++;
+        }
+        lookups.add(count);
+        hits.add(found);
+      }));
+    }
+
+    threads.forEach(Thread::start);
+    Thread.sleep(MEASURE_MILLIS);
+    running.set(false);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    sink += hits.sum();
+    return lookups.sum() * 1000 / MEASURE_MILLIS;
+  }
+
+  /**
+   * Measures the time to insert SCAN_SIZE random values, to look up SCAN_SIZE random values, and
+   * to scan every value in order, for each of the given collections. Every collection is measured
+   * twice and only the second round is printed, so that the first one warms up the JIT.
+   *
+   * @param names     the name printed for each collection
+   * @param factories creates an empty instance of each collection
+   */
+  public static void benchmarkSingleThreaded(List<String> names,
+      List<Supplier<IterableSortedCollection<Integer>>> factories) {
+    int[] values = new Random(400).ints(SCAN_SIZE).toArray();
+    System.out.println("Single threaded, " + SCAN_SIZE + " values");
+    System.out.println("collection              insert ms  contains ms  scan ms");
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < factories.size(); i++) {
+        IterableSortedCollection<Integer> collection = factories.get(i).get();
+
+        long start = System.nanoTime();
+        for (int value : values) {
+          collection.insert(value);
+        }
+        long insertMillis = (System.nanoTime() - start) / 1000000;
+
+        start = System.nanoTime();
+        int found = 0;
+        for (int value : values) {
+          if (collection.contains(value)) {
+            found++;
+          }
+        }
+        long containsMillis = (System.nanoTime() - start) / 1000000;
+
+        start = System.nanoTime();
+        long sum = 0;
+        for (int value : collection) {
+          sum += value;
+        }
+        long scanMillis = (System.nanoTime() - start) / 1000000;
+        sink += found + sum;
+
+        if (round == 1) {
+          System.out.printf("%-22s  %9d  %11d  %7d%n", names.get(i), insertMillis, containsMillis,
+              scanMillis);
+        }
+      }
+    }
+  }
+
+  /**
+   * Replays the same trace of SCAN_SIZE lookups against each of the given collections, after
+   * loading PRELOAD values into them in random order. The looked up values follow a Zipf
+   * distribution with exponent zipfExponent over the loaded values, so the value of rank k is
+   * looked up with probability proportional to 1 / k^zipfExponent; which value gets which rank is
+   * shuffled, so that hot values are spread over the whole key range. Every collection is measured
+   * twice and only the second round is printed.
+   *
+   * @param zipfExponent how skewed the lookups are, with 0 meaning uniform
+   * @param names        the name printed for each collection
+   * @param factories    creates an empty instance of each collection
+   */
+  public static void benchmarkSkewedLookups(double zipfExponent, List<String> names,
+      List<Supplier<IterableSortedCollection<Integer>>> factories) {
+    Random random = new Random(400);
+    int[] values = new int[PRELOAD];
+    for (int i = 0; i < PRELOAD; i++) {
+      values[i] = 2 * i;
+    }
+    // a Fisher-Yates shuffle gives both the insert order and the rank of each value
+    for (int i = PRELOAD - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = values[i];
+      values[i] = values[j];
+      values[j] = swap;
+    }
+
+    double[] cumulative = new double[PRELOAD];
+    double total = 0;
+    for (int rank = 0; rank < PRELOAD; rank++) {
+      total += Math.pow(rank + 1, -zipfExponent);
+      cumulative[rank] = total;
+    }
+    int[] trace = new int[SCAN_SIZE];
+    for (int i = 0; i < SCAN_SIZE; i++) {
+      int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+      trace[i] = values[Math.min(PRELOAD - 1, (rank < 0) ? -rank - 1 : rank)];
+    }
+
+    System.out.println("Zipf lookups (exponent " + zipfExponent + "), " + SCAN_SIZE
+        + " lookups over " + PRELOAD + " values");
+    System.out.println("collection              contains ms  ns/lookup");
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < factories.size(); i++) {
+        IterableSortedCollection<Integer> collection = factories.get(i).get();
+        for (int value : values) {
+          collection.insert(value);
+        }
+
+        long start = System.nanoTime();
+        int found = 0;
+        for (int value : trace) {
+          if (collection.contains(value)) {
+            found++;
+          }
+        }
+        long nanos = System.nanoTime() - start;
+        sink += found;
+
+        if (round == 1) {
+          System.out.printf("%-22s  %11d  %9d%n", names.get(i), nanos / 1000000,
+              nanos / SCAN_SIZE);
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts the average number of key comparisons, and measures the average time, of a contains
+   * call on each of the given collections after loading PRELOAD random values into them in random
+   * order. Half of the looked up values are in the collection. The comparisons are counted by
+   * looking up a ComparisonCounter in place of each value, and the time is measured separately
+   * with plain Integers. Every collection is measured twice and only the second round is printed.
+   *
+   * @param names     the name printed for each collection
+   * @param factories creates an empty instance of each collection
+   */
+  public static void benchmarkLookupComparisons(List<String> names,
+      List<Supplier<IterableSortedCollection<Integer>>> factories) {
+    Random random = new Random(400);
+    int[] values = random.ints(PRELOAD).toArray();
+    int[] lookups = new int[SCAN_SIZE];
+    for (int i = 0; i < SCAN_SIZE; i++) {
+      lookups[i] = (i % 2 == 0) ? values[random.nextInt(PRELOAD)] : random.nextInt();
+    }
+
+    System.out.println("Lookups, " + SCAN_SIZE + " contains calls over " + PRELOAD + " values");
+    System.out.println("collection              comparisons/lookup  ns/lookup");
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < factories.size(); i++) {
+        IterableSortedCollection<Integer> collection = factories.get(i).get();
+        for (int value : values) {
+          collection.insert(value);
+        }
+
+        long start = System.nanoTime();
+        int found = 0;
+        for (int value : lookups) {
+          if (collection.contains(value)) {
+            found++;
+          }
+        }
+        long nanos = System.nanoTime() - start;
+
+        ComparisonCounter probe = new ComparisonCounter();
+        for (int value : lookups) {
+          probe.value = value;
+          if (collection.contains(probe)) {
+            found++;
+          }
+        }
+        sink += found;
+
+        if (round == 1) {
+          System.out.printf("%-22s  %18.2f  %9d%n", names.get(i),
+              (double) probe.comparisons / SCAN_SIZE, nanos / SCAN_SIZE);
+        }
+      }
+    }
+  }
+
+  /**
+   * Stands in for an Integer in lookups, and counts how many times it is compared.
+   */
+  private static class ComparisonCounter implements Comparable<Integer> {
+
+    // the value being looked up
+    private int value;
+    // number of calls to compareTo so far
+    private long comparisons;
+
+    @Override
+    public int compareTo(Integer other) {
+      comparisons++;
+      return Integer.compare(value, other);
+    }
+
+  }
+
+  /**
+   * Compares how much heap a red-black tree of SCAN_SIZE int keys keeps alive, and how long the
+   * garbage collector takes while such an index exists, for a RedBlackTree of Integers, an
+   * IntRedBlackTree, and an OffHeapIntSortedCollection. The collection times are summed over all
+   * collectors for one full collection and for a stretch of short-lived allocations.
+   */
+  public static void benchmarkHeapFootprint() {
+    int[] values = new Random(400).ints(SCAN_SIZE).toArray();
+    System.out.println("Heap footprint and GC time, " + SCAN_SIZE + " int keys");
+    System.out.println("index                        heap MB  full GC ms  young GC ms");
+    for (int round = 0; round < 2; round++) {
+      measureFootprint("RedBlackTree<Integer>", round == 1, () -> {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+        for (int value : values) {
+          tree.insert(value);
+        }
+        return tree;
+      });
+      measureFootprint("IntRedBlackTree", round == 1, () -> {
+        IntRedBlackTree tree = new IntRedBlackTree();
+        for (int value : values) {
+          tree.insert(value);
+        }
+        return tree;
+      });
+      measureFootprint("OffHeapIntSortedCollection", round == 1, () -> {
+        OffHeapIntSortedCollection index = new OffHeapIntSortedCollection();
+        for (int i = 0; i < values.length; i++) {
+          index.insert(values[i], i);
+        }
+        return index;
+      });
+    }
+  }
+
+  /**
+   * Builds one index and measures the heap it retains, the time of a full collection while it is
+   * alive, and the collection time spent while allocating short-lived garbage next to it.
+   */
+  private static void measureFootprint(String name, boolean print, Supplier<Object> build) {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    long before = runtime.totalMemory() - runtime.freeMemory();
+    Object index = build.get();
+    System.gc();
+    long retained = runtime.totalMemory() - runtime.freeMemory() - before;
+
+    long start = totalCollectionMillis();
+    System.gc();
+    long fullMillis = totalCollectionMillis() - start;
+
+    // each array stays reachable briefly, so that it has to be allocated on the heap
+    Object[] recent = new Object[1024];
+    start = totalCollectionMillis();
+    for (int i = 0; i < 16 * SCAN_SIZE; i++) {
+      recent[i & 1023] = new int[16];
+    }
+    long youngMillis = totalCollectionMillis() - start;
+    sink += recent.length + index.hashCode();
+
+    if (print) {
+      System.out.printf("%-26s  %9d  %10d  %11d%n", name, retained >> 20, fullMillis,
+          youngMillis);
+    }
+  }
+
+  /**
+   * @return the total time spent in garbage collection so far, summed over every collector
+   */
+  private static long totalCollectionMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0, collector.getCollectionTime());
+    }
+    return millis;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    benchmarkConcurrentReads();
+    benchmarkSingleThreaded(List.of("IterableRedBlackTree", "BPlusTree"),
+        List.of(IterableRedBlackTree::new, BPlusTree::new));
+    benchmarkHeapFootprint();
+    for (double zipfExponent : new double[] {0, 1, 1.2}) {
+      benchmarkSkewedLookups(zipfExponent, List.of("IterableRedBlackTree", "SplayTree"),
+          List.of(IterableRedBlackTree::new, SplayTree::new));
+    }
+    benchmarkLookupComparisons(List.of("IterableRedBlackTree", "AVLTree", "BPlusTree"),
+        List.of(IterableRedBlackTree::new, AVLTree::new, BPlusTree::new));
+  }
+}